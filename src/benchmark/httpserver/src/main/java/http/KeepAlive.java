@@ -0,0 +1,66 @@
+package http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+// Opens a number of keep-alive connections against each execution mode, sends one request per
+// connection and leaves the connection open. Counts the connections that got their response.
+//
+// Usage: java --enable-preview -cp target/http-benchmark-httpserver.jar http.KeepAlive [clients]
+public enum KeepAlive {;
+
+    private static final byte[] REQUEST = "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(US_ASCII);
+    private static final int TIMEOUT_MILLIS = 2000;
+
+    public static void main(final String... args) throws Exception {
+        final int clients = args.length == 0 ? 1000 : Integer.parseInt(args[0]);
+        for (final var mode : List.of("pool", "virtual", "nonblocking")) {
+            final var server = Main.newServer(mode, 0).start();
+            final long start = System.nanoTime();
+            final int served = countServedClients(server.getPort(), clients);
+            final long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("%-12s %6d of %6d keep-alive clients served (%d ms)%n", mode, served, clients, millis);
+            server.stop();
+        }
+        // The fixed thread pools are not daemon threads
+        System.exit(0);
+    }
+
+    private static int countServedClients(final int port, final int clients) throws IOException {
+        final List<Socket> sockets = new ArrayList<>(clients);
+        try {
+            for (int i = 0; i < clients; i++) {
+                final var socket = new Socket("127.0.0.1", port);
+                socket.getOutputStream().write(REQUEST);
+                sockets.add(socket);
+            }
+            final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            int served = 0;
+            for (final var socket : sockets) {
+                socket.setSoTimeout((int) Math.max(1, deadline - System.currentTimeMillis()));
+                if (readResponseHead(socket.getInputStream())) served++;
+            }
+            return served;
+        } finally {
+            for (final var socket : sockets) socket.close();
+        }
+    }
+
+    private static boolean readResponseHead(final InputStream in) {
+        try {
+            int matched = 0; int b; while ((b = in.read()) != -1) {
+                matched = (b == (matched % 2 == 0 ? '\r' : '\n')) ? matched + 1 : (b == '\r' ? 1 : 0);
+                if (matched == 4) return true;
+            }
+            return false;
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+}
@@ -1,9 +1,33 @@
 package http;
 
+import httpserver.HttpServer;
+import httpserver.core.HttpServerBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+
+import static httpserver.HttpServer.newHttpServer;
+import static httpserver.core.ResponseBuilder.respond;
+import static httpserver.core.StatusCode.OK;
+
 public enum Main {;
 
-    public static void main(final String... args) {
-        
+    // Usage: java --enable-preview -jar target/http-benchmark-httpserver.jar [virtual|pool|nonblocking]
+    public static void main(final String... args) throws IOException {
+        newServer(args.length == 0 ? "virtual" : args[0], 8080).start();
+    }
+
+    public static HttpServer newServer(final String mode, final int port) throws IOException {
+        final HttpServerBuilder builder = newHttpServer().bind(port, "127.0.0.1").daemon(true);
+        switch (mode) {
+            case "virtual" -> builder.virtualThreads();
+            case "pool" -> builder.executor(Executors.newFixedThreadPool(10));
+            case "nonblocking" -> builder.nonBlocking(true).executor(Executors.newFixedThreadPool(10));
+            default -> throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+        return builder
+            .handler(exchange -> respond(exchange).status(OK).contentType("text/plain").send("Hello, world!"))
+            .build();
     }
 
 }
@@ -3,23 +3,44 @@ package httpserver;
 import httpserver.core.HttpServerBuilder;
 import httpserver.net.ConnectionHandler;
 import httpserver.net.ConnectionListener;
+import httpserver.net.SocketConnectionListener;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.util.concurrent.Executor;
 
-public final class HttpServer extends ConnectionListener {
+import static httpserver.core.HttpServerBuilder.DEFAULT_MAX_REQUEST_SIZE;
+
+public final class HttpServer {
 
     public static HttpServerBuilder newHttpServer() {
         return new HttpServerBuilder();
     }
 
+    private final ConnectionListener listener;
+
+    public HttpServer(final ConnectionListener listener) {
+        this.listener = listener;
+    }
+    // The constructor from before the listener was split out, it runs the blocking listener with
+    // one handler for all connections. Use newHttpServer() instead.
+    @Deprecated
     public HttpServer(final int port, final InetAddress bindAddress, final boolean daemon,
                       final int backlog, final Executor executor, final ConnectionHandler handler) {
-        super(port, bindAddress, daemon, backlog, executor, handler);
+        this(new SocketConnectionListener(port, bindAddress, daemon, backlog, executor, DEFAULT_MAX_REQUEST_SIZE, () -> handler));
+    }
+
+    public HttpServer start() throws IOException {
+        listener.start();
+        return this;
+    }
+
+    public void stop() throws IOException {
+        listener.stop();
     }
 
     public int getPort() {
-        return serverSocket.getLocalPort();
+        return listener.getPort();
     }
 
 }
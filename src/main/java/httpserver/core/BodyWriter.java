@@ -0,0 +1,10 @@
+package httpserver.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface BodyWriter {
+
+    void writeTo(OutputStream out) throws IOException;
+
+}
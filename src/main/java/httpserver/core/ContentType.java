@@ -28,6 +28,11 @@ public interface ContentType {
             entry(".jpeg", "image/jpeg"),
             entry(".png", "image/png"),
             entry(".svg", "image/svg+xml"),
+            entry(".css", "text/css"),
+            entry(".js", "text/javascript"),
+            entry(".txt", "text/plain"),
+            entry(".mp4", "video/mp4"),
+            entry(".webm", "video/webm"),
             entry(".htm", "text/html"),
             entry(".html", "text/html"),
             entry(".json", "application/json"),
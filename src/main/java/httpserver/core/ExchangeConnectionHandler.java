@@ -0,0 +1,86 @@
+package httpserver.core;
+
+import httpserver.HttpHandler;
+import httpserver.error.PayloadTooLarge;
+import httpserver.net.ConnectionHandler;
+import httpserver.net.RequestInputStream;
+import httpserver.net.ResponseOutputStream;
+
+import java.io.IOException;
+import java.net.Socket;
+
+import static httpserver.core.Headers.CONNECTION;
+import static httpserver.core.ResponseBody.UNKNOWN_LENGTH;
+import static httpserver.core.RequestParsing.discardRemainingRequestBody;
+import static httpserver.core.RequestParsing.readRequestHead;
+import static httpserver.core.StatusCode.INTERNAL_SERVER_ERROR;
+import static httpserver.core.StatusCode.REQUEST_ENTITY_TOO_LARGE;
+import static httpserver.util.Strings.*;
+
+// One instance per connection. The request head buffer and the exchange are created on the first
+// request and reused for every following request on the same connection.
+final class ExchangeConnectionHandler implements ConnectionHandler {
+
+    private final HttpHandler handler;
+    private final int maxRequestSize;
+    private final long maxRequestBodySize;
+
+    private byte[] data;
+    private HttpServerExchange exchange;
+
+    ExchangeConnectionHandler(final HttpHandler handler, final int maxRequestSize, final long maxRequestBodySize) {
+        this.handler = handler;
+        this.maxRequestSize = maxRequestSize;
+        this.maxRequestBodySize = maxRequestBodySize;
+    }
+
+    public void handleInput(final Socket socket, final RequestInputStream in, final ResponseOutputStream out)
+            throws IOException {
+        if (data == null) data = new byte[maxRequestSize];
+        final int length = readRequestHead(data, in);
+        if (exchange == null) exchange = new HttpServerExchange(socket, data, length, in, out, maxRequestBodySize);
+        else exchange.reset(length);
+
+        if (exchange.isRequestBodyTooLarge()) {
+            exchange.setStatusCode(REQUEST_ENTITY_TOO_LARGE);
+            exchange.setResponseHeader(CONNECTION, CLOSE);
+            exchange.sendResponse();
+            throw new IOException("Request body too large, closing connection");
+        }
+
+        Exception exception = null;
+        try {
+            handler.handleRequest(exchange);
+        } catch (final Exception e) {
+            exception = e;
+            exchange.setStatusCode(e instanceof PayloadTooLarge ? REQUEST_ENTITY_TOO_LARGE : INTERNAL_SERVER_ERROR);
+        } finally {
+            final boolean bodyComplete = discardRemainingRequestBody(exchange);
+            if (!bodyComplete) exchange.setResponseHeader(CONNECTION, CLOSE);
+            // If the next request is already buffered its response will be sent along with this one,
+            // unless this body is streamed and has to reach the client as it is written
+            out.holdFlush(bodyComplete && in.hasRequestHead() && exchange.getResponseBody().getLength() != UNKNOWN_LENGTH);
+            exchange.sendResponse();
+            out.holdFlush(false);
+            if (!bodyComplete) throw new IOException("Request body too large, closing connection");
+            ifNeededCloseConnection(exchange);
+            exchange.notifyCompleteListeners(exception);
+        }
+    }
+
+    private static void ifNeededCloseConnection(final HttpServerExchange exchange) throws IOException {
+        if (exchange.isCloseAfterResponse())
+            throw new IOException("Response without length, closing connection");
+        if (HTTP_09.equals(exchange.getRequestProtocol()))
+            throw new IOException("HTTP/0.9 closing connection");
+        if (HTTP_10.equals(exchange.getRequestProtocol())) {
+            if (!exchange.requestHeaderEqualsIgnoreCase(CONNECTION, KEEP_ALIVE))
+                throw new IOException("HTTP/1.0 closing connection");
+        }
+        if (HTTP_11.equals(exchange.getRequestProtocol())) {
+            if (exchange.requestHeaderEqualsIgnoreCase(CONNECTION, CLOSE))
+                throw new IOException("HTTP/1.1 closing connection");
+        }
+    }
+
+}
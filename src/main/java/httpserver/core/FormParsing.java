@@ -12,7 +12,6 @@ import static httpserver.util.Chars.EQUALS;
 import static httpserver.util.Encoding.decodeUrl;
 import static httpserver.util.Strings.AMPERSAND;
 import static httpserver.util.Strings.EMPTY;
-import static java.nio.charset.StandardCharsets.US_ASCII;
 
 public enum FormParsing {;
 
@@ -46,37 +45,46 @@ public enum FormParsing {;
         return map;
     }
 
-    public static List<FormPart> parseMultipartForm(final String contentType, final int contentLength, final InputStream is) throws IOException {
-        if (!contentType.startsWith("multipart/form-data")) throw new IOException("Not multipart form data");
-        if (contentLength > 64 * 1024) throw new IOException("Form content too large");
+    public static final int DEFAULT_MEMORY_THRESHOLD = 64 * 1024, MAX_FORM_PARTS = 256;
 
-        final byte[] boundary = ("--" + contentType.substring(contentType.indexOf('=') + 1)).getBytes(US_ASCII);
-        final byte[] rawData = new byte[contentLength];
+    // The content length isn't needed anymore, the parts are read until the closing boundary. All
+    // parts are kept in memory, callers of this version never had to close them. Limit the size
+    // of the request body with maxRequestBodySize(...).
+    public static List<FormPart> parseMultipartForm(final String contentType, final int contentLength, final InputStream is) throws IOException {
         final List<FormPart> parts = new ArrayList<>();
+        parseMultipartForm(contentType, is, part -> {
+            if (parts.size() == MAX_FORM_PARTS) throw new IOException("Form has too many parts");
+            part.load();
+            parts.add(part);
+        });
+        return parts;
+    }
 
-        int start = readUntil(rawData, 0, is, boundary); int end = -1;
-        while (start != -1) {
-            // read the \r\n directly after the boundary, and move the offset forward by two
-            // so we can search for the next boundary. This is safe because the ending boundary
-            // always has two dashes at the end.
-            rawData[start  ] = (byte) is.read();
-            rawData[start+1] = (byte) is.read();
-            end = readUntil(rawData, start+2, is, boundary);
-            if (end == -1) break; // there is no next boundary so we stop
-            parts.add(new FormPart(rawData, start, end - boundary.length - 2));
-            start = end;
+    // Parts larger than the threshold are written to temp files, close the parts to delete them
+    public static List<FormPart> parseMultipartForm(final String contentType, final InputStream is, final int memoryThreshold) throws IOException {
+        final List<FormPart> parts = new ArrayList<>();
+        try {
+            parseMultipartForm(contentType, is, part -> {
+                if (parts.size() == MAX_FORM_PARTS) throw new IOException("Form has too many parts");
+                part.store(memoryThreshold);
+                parts.add(part);
+            });
+        } catch (final IOException | RuntimeException e) {
+            for (final var part : parts) part.close();
+            throw e;
         }
-
         return parts;
     }
 
-    private static int readUntil(final byte[] data, int offset, final InputStream in, final byte[] boundary) throws IOException {
-        int b; while ((b = in.read()) != -1) {
-            data[offset++] = (byte) b;
-            if (containsAt(data, boundary, offset)) return offset;
-            if (offset > data.length) throw new IOException("Filled buffer but more data still available");
+    // Hands every part to the handler as it arrives, without keeping the data around
+    public static void parseMultipartForm(final String contentType, final InputStream is, final FormPartHandler handler) throws IOException {
+        if (contentType == null || !contentType.startsWith("multipart/form-data")) throw new IOException("Not multipart form data");
+
+        final var reader = new MultipartReader(is, MultipartReader.headerParameters(contentType).get("boundary"));
+        byte[] headers;
+        while ((headers = reader.nextPart()) != null) {
+            handler.handlePart(new FormPart(headers, reader.partStream()));
         }
-        return -1;
     }
 
     public static int indexOf(final byte[] array, final byte[] target, final int start, final int end) {
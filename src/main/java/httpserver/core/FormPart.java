@@ -1,11 +1,18 @@
 package httpserver.core;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import static httpserver.core.Headers.CONTENT_DISPOSITION;
+import static httpserver.core.Headers.CONTENT_TYPE;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 // Content-Disposition header parsing can be difficult.
@@ -14,44 +21,87 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 // - https://datatracker.ietf.org/doc/html/rfc5987
 // There are three types of headers. Bare, Quoted String, and Asterisk string.
 //
-// TODO add Content-Disposition header parsing
-// TODO test if the byte[] containing the form data is correct
-public final class FormPart {
+// A part handed to a FormPartHandler reads its data straight from the request, once. A part from
+// the list of parseMultipartForm() holds its data in memory, or in a temp file when it was too
+// large. Closing the part deletes that file.
+public final class FormPart implements Closeable {
 
     private static final byte[] CRLF_CRLF = "\r\n\r\n".getBytes(UTF_8);
 
-    private static final int
-        LENGTH_CONTENT_TYPE = "Content-Type: ".length(),
-        LENGTH_CONTENT_DISPOSITION = "Content-Disposition: ".length();
-
     private String disposition;
     private String type;
-    private final List<String> headers;
-    private final byte[] data;
-    private final int start;
-    private final int middle;
-    private final int end;
+    private String name;
+    private String filename;
+    private final List<String> headers = new ArrayList<>();
+    private final byte[] head;
+    private InputStream stream;
+    private byte[] data;
+    private Path file;
+    private long size = -1;
 
     public FormPart(final byte[] data, final int start, final int end) throws IOException {
-        middle = FormParsing.indexOf(data, CRLF_CRLF, start, end);
+        final int middle = FormParsing.indexOf(data, CRLF_CRLF, start, end);
         if (middle == -1) throw new IOException("Malformed form, no CRLFCRLF between boundaries");
 
-        headers = new ArrayList<>();
-        final String header = new String(data, start, middle - start);
-        try (final var reader = new BufferedReader(new StringReader(header))) {
-            String line; while ((line = reader.readLine()) != null) {
-                if (line.isEmpty()) continue;
-                headers.add(line);
-                if (line.startsWith("Content-Type: "))
-                    type = line.substring(LENGTH_CONTENT_TYPE);
-                if (line.startsWith("Content-Disposition: "))
-                    disposition = line.substring(LENGTH_CONTENT_DISPOSITION);
-            }
+        this.head = Arrays.copyOfRange(data, start, middle);
+        this.data = Arrays.copyOfRange(data, middle, end);
+        this.size = this.data.length;
+        parseHeaders();
+    }
+    FormPart(final byte[] head, final InputStream stream) {
+        this.head = head;
+        this.stream = stream;
+        parseHeaders();
+    }
+
+    private void parseHeaders() {
+        for (final String line : new String(head, UTF_8).split("\r\n")) {
+            if (line.isEmpty()) continue;
+            headers.add(line);
+            if (isHeader(line, CONTENT_TYPE))
+                type = line.substring(CONTENT_TYPE.length() + 1).trim();
+            if (isHeader(line, CONTENT_DISPOSITION))
+                disposition = line.substring(CONTENT_DISPOSITION.length() + 1).trim();
+        }
+        if (disposition != null) {
+            final var parameters = MultipartReader.headerParameters(disposition);
+            name = parameters.get("name");
+            filename = parameters.get("filename");
         }
+    }
+
+    private static boolean isHeader(final String line, final String name) {
+        return line.length() > name.length() && line.charAt(name.length()) == ':'
+            && line.regionMatches(true, 0, name, 0, name.length());
+    }
 
-        this.data = data;
-        this.start = start;
-        this.end = end;
+    // Reads all of the data off the request into memory
+    void load() throws IOException {
+        data = stream.readAllBytes();
+        size = data.length;
+        stream = null;
+    }
+
+    // Reads the data off the request, up to the threshold into memory and when it is larger all
+    // of it into a temp file
+    void store(final int memoryThreshold) throws IOException {
+        final byte[] start = stream.readNBytes(memoryThreshold);
+        final int next = stream.read();
+        if (next == -1) {
+            data = start;
+            size = start.length;
+        } else {
+            file = Files.createTempFile("httpserver-", ".part");
+            try (final var out = Files.newOutputStream(file)) {
+                out.write(start);
+                out.write(next);
+                size = start.length + 1 + stream.transferTo(out);
+            } catch (final IOException | RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+        stream = null;
     }
 
     public String getContentType() {
@@ -60,19 +110,50 @@ public final class FormPart {
     public String getDisposition() {
         return disposition;
     }
+    public String getName() {
+        return name;
+    }
+    // Null for a part that isn't a file upload
+    public String getFilename() {
+        return filename;
+    }
     public List<String> getHeaders() {
         return headers;
     }
+    // -1 for a part that is read from the request
+    public long getSize() {
+        return size;
+    }
+    // The temp file that holds the data, null when it is in memory or read from the request.
+    // Moving the file away saves copying a large upload.
+    public Path getFile() {
+        return file;
+    }
+
+    public InputStream getInputStream() throws IOException {
+        if (stream != null) return stream;
+        if (file != null) return Files.newInputStream(file);
+        return new ByteArrayInputStream(data);
+    }
 
     public byte[] getFormPartData() {
-        final byte[] raw = new byte[end - start];
-        System.arraycopy(data, start, raw, 0, raw.length);
+        final byte[] data = getData();
+        final byte[] raw = Arrays.copyOf(head, head.length + data.length);
+        System.arraycopy(data, 0, raw, head.length, data.length);
         return raw;
     }
     public byte[] getData() {
-        final byte[] raw = new byte[end - middle];
-        System.arraycopy(data, middle, raw, 0, raw.length);
-        return raw;
+        try {
+            if (stream != null) return stream.readAllBytes();
+            if (file != null) return Files.readAllBytes(file);
+            return data.clone();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void close() throws IOException {
+        if (file != null) Files.deleteIfExists(file);
     }
 
 }
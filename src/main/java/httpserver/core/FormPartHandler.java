@@ -0,0 +1,10 @@
+package httpserver.core;
+
+import java.io.IOException;
+
+public interface FormPartHandler {
+
+    // The data of the part can only be read during this call, what isn't read is skipped
+    void handlePart(FormPart part) throws IOException;
+
+}
@@ -8,6 +8,7 @@ public enum Headers {;
         AUTHORIZATION = "Authorization",
         CACHE_CONTROL = "Cache-Control",
         CONNECTION = "Connection",
+        CONTENT_DISPOSITION = "Content-Disposition",
         CONTENT_LENGTH = "Content-Length",
         CONTENT_TYPE = "Content-Type",
         COOKIE = "Cookie",
@@ -29,7 +30,17 @@ public enum Headers {;
         WWW_AUTHENTICATE = "WWW-Authenticate",
         ACCEPT_ENCODING = "Accept-Encoding",
         CONTENT_ENCODING = "Content-Encoding",
-        PRAGMA = "Pragma";
+        PRAGMA = "Pragma",
+        TRANSFER_ENCODING = "Transfer-Encoding",
+        ACCEPT_RANGES = "Accept-Ranges",
+        ALLOW = "Allow",
+        CONTENT_RANGE = "Content-Range",
+        IF_MODIFIED_SINCE = "If-Modified-Since",
+        IF_RANGE = "If-Range",
+        LAST_EVENT_ID = "Last-Event-ID",
+        LAST_MODIFIED = "Last-Modified",
+        RANGE = "Range",
+        VARY = "Vary";
 
     public static boolean isContentHeader(final String header) {
         return !isNullOrEmpty(header) && header.startsWith("Content-");
@@ -0,0 +1,21 @@
+package httpserver.core;
+
+import httpserver.util.Bytes;
+
+// The method of a request is parsed into one of these when the head is read. Routers index their
+// tables by the ordinal. A method the server does not know is OTHER.
+public enum HttpMethod {
+    GET, HEAD, POST, PUT, DELETE, PATCH, OPTIONS, TRACE, CONNECT, OTHER;
+
+    private static final HttpMethod[] KNOWN = { GET, POST, HEAD, PUT, DELETE, PATCH, OPTIONS, TRACE, CONNECT };
+
+    public static HttpMethod parse(final byte[] data, final int offset, final int length) {
+        for (final var method : KNOWN) {
+            final String name = method.name();
+            if (name.length() == length && name.charAt(0) == data[offset] && Bytes.equals(data, offset, length, name))
+                return method;
+        }
+        return OTHER;
+    }
+
+}
@@ -2,29 +2,29 @@ package httpserver.core;
 
 import httpserver.HttpHandler;
 import httpserver.HttpServer;
-import httpserver.util.Value;
+import httpserver.net.ConnectionHandler;
+import httpserver.net.SelectorConnectionListener;
+import httpserver.net.SocketConnectionListener;
 
-import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
-
-import static httpserver.core.Headers.CONNECTION;
-import static httpserver.core.RequestParsing.readRequestHead;
-import static httpserver.core.RequestParsing.discardRemainingRequestBody;
-import static httpserver.core.StatusCode.INTERNAL_SERVER_ERROR;
-import static httpserver.util.Strings.*;
+import java.util.function.Supplier;
 
 public class HttpServerBuilder {
 
+    public static final int DEFAULT_MAX_REQUEST_SIZE = 8192;
+
     private int port = 8080;
     private int backlog = 100;
     private boolean daemon = false;
     private String address = "0.0.0.0";
     private HttpHandler handler;
-    private int maxRequestSize = 8192;
+    private int maxRequestSize = DEFAULT_MAX_REQUEST_SIZE;
+    private long maxRequestBodySize = Long.MAX_VALUE;
     private Executor executor;
+    private boolean nonBlocking = false;
 
     public HttpServerBuilder bind(final int port, final String address) {
         if (port < 0 || port > 65535)
@@ -37,6 +37,10 @@ public class HttpServerBuilder {
         this.executor = executor;
         return this;
     }
+    public HttpServerBuilder virtualThreads() {
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        return this;
+    }
     public HttpServerBuilder backlog(final int backlog) {
         if (backlog < 0)
             throw new IllegalArgumentException("Number of waiting connections must be a positive number");
@@ -53,6 +57,16 @@ public class HttpServerBuilder {
         this.maxRequestSize = maxRequestSize;
         return this;
     }
+    public HttpServerBuilder maxRequestBodySize(final long maxRequestBodySize) {
+        if (maxRequestBodySize < 0)
+            throw new IllegalArgumentException("Max request body size must be a positive number");
+        this.maxRequestBodySize = maxRequestBodySize;
+        return this;
+    }
+    public HttpServerBuilder nonBlocking(final boolean nonBlocking) {
+        this.nonBlocking = nonBlocking;
+        return this;
+    }
     public HttpServerBuilder handler(final HttpHandler handler) {
         this.handler = handler;
         return this;
@@ -60,36 +74,11 @@ public class HttpServerBuilder {
 
     public HttpServer build() throws UnknownHostException {
         final var bindAddress = InetAddress.getByName(address);
-        final var exec = executor != null ? executor : Executors.newFixedThreadPool(10);
-        return new HttpServer(port, bindAddress, daemon, backlog, exec, (socket, in, out) -> {
-            final byte[] data = new byte[maxRequestSize];
-            final var exchange = new HttpServerExchange(socket, data, readRequestHead(data, in), in, out);
-            final var value = new Value<Exception>();
-            try {
-                handler.handleRequest(exchange);
-            } catch (final Exception e) {
-                value.value = e;
-                exchange.setStatusCode(INTERNAL_SERVER_ERROR);
-            } finally {
-                discardRemainingRequestBody(exchange);
-                exchange.sendResponse();
-                ifNeededCloseConnection(exchange);
-                exchange.notifyCompleteListeners(value.value);
-            }
-        });
-    }
-
-    private static void ifNeededCloseConnection(final HttpServerExchange exchange) throws IOException {
-        if (HTTP_09.equals(exchange.getRequestProtocol()))
-            throw new IOException("HTTP/0.9 closing connection");
-        if (HTTP_10.equals(exchange.getRequestProtocol())) {
-            if (!KEEP_ALIVE.equals(exchange.getRequestHeader(CONNECTION)))
-                throw new IOException("HTTP/1.0 closing connection");
-        }
-        if (HTTP_11.equals(exchange.getRequestProtocol())) {
-            if (CLOSE.equals(exchange.getRequestHeader(CONNECTION)))
-                throw new IOException("HTTP/1.1 closing connection");
-        }
+        final var exec = executor != null ? executor : Executors.newVirtualThreadPerTaskExecutor();
+        final Supplier<ConnectionHandler> handlers = () -> new ExchangeConnectionHandler(handler, maxRequestSize, maxRequestBodySize);
+        return new HttpServer(nonBlocking
+            ? new SelectorConnectionListener(port, bindAddress, daemon, backlog, exec, maxRequestSize, handlers)
+            : new SocketConnectionListener(port, bindAddress, daemon, backlog, exec, maxRequestSize, handlers));
     }
 
 }
@@ -1,15 +1,17 @@
 package httpserver.core;
 
-import httpserver.util.Chars;
+import httpserver.util.Bytes;
+import httpserver.util.BytesFunction;
+import httpserver.util.ChunkedInputStream;
+import httpserver.util.ChunkedOutputStream;
 import httpserver.util.LengthRestrictedInputStream;
 
 import java.io.*;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.nio.charset.Charset;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -17,67 +19,205 @@ import java.util.Map;
 import static httpserver.core.Headers.*;
 import static httpserver.core.ResponseBody.*;
 import static httpserver.core.StatusCode.OK;
-import static httpserver.core.StatusCode.getMessageForCode;
 import static httpserver.util.Chars.EQUALS;
 import static httpserver.util.Chars.QUESTION_MARK;
+import static httpserver.util.Bytes.equalsIgnoreCase;
+import static httpserver.util.Bytes.indexOf;
+import static httpserver.util.Bytes.isWhitespace;
+import static httpserver.util.Encoding.decodePath;
 import static httpserver.util.Encoding.decodeUrl;
 import static httpserver.util.Strings.*;
 import static java.nio.charset.StandardCharsets.US_ASCII;
-import static java.time.Instant.now;
-import static java.util.Locale.ENGLISH;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
+// The server reuses one exchange for all requests on a connection. Handlers must not keep a
+// reference to the exchange, or to the raw request bytes, after the request is complete.
 public class HttpServerExchange {
 
     private final byte[] rawRequest;
 
-    private final String method;
-    private final String uri;
-    private final String protocol;
-    private final List<String> headers;
+    private HttpMethod httpMethod;
+    private String method;
+    private String uri;
+    private int uriStart, uriEnd;
+    private String protocol;
+    private int[] headerIndex = new int[4 * 16];
+    private int headerCount;
 
     private final Socket socket;
     private final InputStream in;
     private final OutputStream out;
+    private final long maxRequestBodySize;
 
+    private long requestBodyLength;
+    private boolean chunkedRequestBody;
+    private InputStream body;
+    private ChunkedInputStream chunkedBody;
     private String path;
-    private Map<String, String> queryParameters;
+    private int[] queryIndex = new int[4 * 8];
+    private int queryCount = -1;
+    private int[] cookieIndex = new int[4 * 8];
+    private int cookieCount = -1;
+    private String[] pathParameterNames;
+    private int[] pathParameterIndex = new int[2 * 4];
 
     private int statusCode = OK;
     private String statusMessage;
     private final Map<String, String> responseHeaders = new HashMap<>();
     private ResponseBody responseBody = EMPTY_BODY;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
 
     private boolean noContentLength = false;
     private boolean responseSent = false;
+    private boolean closeAfterResponse = false;
 
     private List<ExchangeCompleteListener> exchangeCompleteListeners;
+    private ResponseHeadEncoder headEncoder;
 
     public HttpServerExchange(final Socket socket, final byte[] request, final int length, final InputStream in, final OutputStream out) throws IOException {
+        this(socket, request, length, in, out, Long.MAX_VALUE);
+    }
+    public HttpServerExchange(final Socket socket, final byte[] request, final int length, final InputStream in,
+                              final OutputStream out, final long maxRequestBodySize) throws IOException {
         this.socket = socket;
         this.rawRequest = request;
         this.in = in;
         this.out = out;
-
-        try (final var reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(request, 0, length)))) {
-            final String firstLine = reader.readLine();
-            final int firstSpaceOffset = firstLine.indexOf(Chars.SPACE);
-            final int secondSpaceOffset = firstLine.indexOf(Chars.SPACE, firstSpaceOffset + 1);
-            this.method = firstLine.substring(0, firstSpaceOffset);
-            if (secondSpaceOffset != -1) {
-                this.uri = firstLine.substring(firstSpaceOffset + 1, secondSpaceOffset);
-                this.protocol = firstLine.substring(secondSpaceOffset + 1);
-            } else {
-                this.uri = firstLine.substring(firstSpaceOffset + 1);
-                this.protocol = HTTP_09;
-            }
-            if (HTTP_10.equals(protocol)) responseHeaders.put(CONNECTION, KEEP_ALIVE);
-            this.headers = new ArrayList<>();
-            String headerLine; while ((headerLine = reader.readLine()) != null) {
-                if (headerLine.isEmpty()) break;
-                // We do not do header concatenation, it has been deprecated in RFC 7230
-                this.headers.add(headerLine);
+        this.maxRequestBodySize = maxRequestBodySize;
+        parseRequestHead(length);
+    }
+
+    void reset(final int length) throws IOException {
+        body = null;
+        chunkedBody = null;
+        path = null;
+        queryCount = -1;
+        cookieCount = -1;
+        pathParameterNames = null;
+        statusCode = OK;
+        statusMessage = null;
+        responseHeaders.clear();
+        responseBody = EMPTY_BODY;
+        chunkSize = DEFAULT_CHUNK_SIZE;
+        noContentLength = false;
+        responseSent = false;
+        closeAfterResponse = false;
+        exchangeCompleteListeners = null;
+        parseRequestHead(length);
+    }
+
+    // A single pass over the head that records where each header name and value is. Strings are
+    // only created for the headers that are asked for.
+    private void parseRequestHead(final int length) throws IOException {
+        final byte[] raw = rawRequest;
+        final int lineEnd = indexOf(raw, 0, length, LF);
+        if (lineEnd == -1) throw new IOException("Malformed request line");
+        final int requestLineEnd = trimLineEnd(raw, 0, lineEnd);
+
+        final int firstSpaceOffset = indexOf(raw, 0, requestLineEnd, SP);
+        if (firstSpaceOffset == -1) throw new IOException("Malformed request line");
+        final int secondSpaceOffset = indexOf(raw, firstSpaceOffset + 1, requestLineEnd, SP);
+        this.httpMethod = HttpMethod.parse(raw, 0, firstSpaceOffset);
+        this.method = httpMethod == HttpMethod.OTHER ? new String(raw, 0, firstSpaceOffset, US_ASCII) : httpMethod.name();
+        this.uriStart = firstSpaceOffset + 1;
+        this.uriEnd = secondSpaceOffset != -1 ? secondSpaceOffset : requestLineEnd;
+        this.uri = new String(raw, uriStart, uriEnd - uriStart, UTF_8);
+        this.protocol = secondSpaceOffset != -1 ? toProtocol(raw, secondSpaceOffset + 1, requestLineEnd) : HTTP_09;
+        if (HTTP_10.equals(protocol)) responseHeaders.put(CONNECTION, KEEP_ALIVE);
+
+        headerCount = 0;
+        int offset = lineEnd + 1;
+        while (offset < length) {
+            int end = indexOf(raw, offset, length, LF);
+            if (end == -1) end = length;
+            final int contentEnd = trimLineEnd(raw, offset, end);
+            if (contentEnd == offset) break;
+
+            // We do not do header concatenation, it has been deprecated in RFC 7230
+            final int colon = indexOf(raw, offset, contentEnd, COLON);
+            if (colon != -1) {
+                int valueStart = colon + 1;
+                int valueEnd = contentEnd;
+                while (valueStart < valueEnd && isWhitespace(raw[valueStart])) valueStart++;
+                while (valueEnd > valueStart && isWhitespace(raw[valueEnd - 1])) valueEnd--;
+                addHeader(offset, colon - offset, valueStart, valueEnd - valueStart);
             }
+            offset = end + 1;
+        }
+
+        parseBodyFraming();
+    }
+
+    // A body that can't be framed would leave the connection at an unknown position, so these
+    // errors close the connection before the handler runs
+    private void parseBodyFraming() throws IOException {
+        requestBodyLength = 0;
+        chunkedRequestBody = false;
+
+        final int transferEncoding = findHeader(TRANSFER_ENCODING, 0);
+        if (transferEncoding != -1) {
+            if (!isLastTokenChunked(transferEncoding)) throw new IOException("Unsupported transfer encoding");
+            chunkedRequestBody = true;
+            return;
+        }
+
+        final int contentLength = findHeader(CONTENT_LENGTH, 0);
+        if (contentLength == -1) return;
+        final int base = contentLength * 4;
+        final int start = headerIndex[base + 2], valueLength = headerIndex[base + 3];
+        if (valueLength == 0 || valueLength > 18) throw new IOException("Malformed Content-Length");
+        long length = 0;
+        for (int i = start; i < start + valueLength; i++) {
+            final byte digit = rawRequest[i];
+            if (digit < '0' || digit > '9') throw new IOException("Malformed Content-Length");
+            length = length * 10 + (digit - '0');
+        }
+        requestBodyLength = length;
+    }
+
+    private boolean isLastTokenChunked(final int header) {
+        final int base = header * 4;
+        final int start = headerIndex[base + 2], end = start + headerIndex[base + 3];
+        int tokenStart = end;
+        while (tokenStart > start && rawRequest[tokenStart - 1] != ',') tokenStart--;
+        while (tokenStart < end && isWhitespace(rawRequest[tokenStart])) tokenStart++;
+        return equalsIgnoreCase(rawRequest, tokenStart, end - tokenStart, CHUNKED);
+    }
+
+    private static final byte LF = '\n', CR = '\r', SP = ' ', COLON = ':';
+
+    private static int trimLineEnd(final byte[] data, final int start, final int end) {
+        return end > start && data[end - 1] == CR ? end - 1 : end;
+    }
+
+    private static String toProtocol(final byte[] data, final int start, final int end) {
+        if (Bytes.equals(data, start, end - start, HTTP_11)) return HTTP_11;
+        if (Bytes.equals(data, start, end - start, HTTP_10)) return HTTP_10;
+        return new String(data, start, end - start, US_ASCII);
+    }
+
+    private void addHeader(final int nameStart, final int nameLength, final int valueStart, final int valueLength) {
+        final int base = headerCount * 4;
+        if (base == headerIndex.length) headerIndex = Arrays.copyOf(headerIndex, base * 2);
+        headerIndex[base] = nameStart;
+        headerIndex[base + 1] = nameLength;
+        headerIndex[base + 2] = valueStart;
+        headerIndex[base + 3] = valueLength;
+        headerCount++;
+    }
+
+    private int findHeader(final String name, final int from) {
+        for (int i = from; i < headerCount; i++) {
+            final int base = i * 4;
+            if (equalsIgnoreCase(rawRequest, headerIndex[base], headerIndex[base + 1], name))
+                return i;
         }
+        return -1;
+    }
+
+    private String headerValue(final int header) {
+        final int base = header * 4;
+        return new String(rawRequest, headerIndex[base + 2], headerIndex[base + 3], UTF_8);
     }
 
     public InetAddress getSourceIpAddress() {
@@ -89,6 +229,9 @@ public class HttpServerExchange {
     public String getRequestMethod() {
         return method;
     }
+    public HttpMethod getHttpMethod() {
+        return httpMethod;
+    }
     public String getRequestURI() {
         return uri;
     }
@@ -96,24 +239,31 @@ public class HttpServerExchange {
         return protocol;
     }
     public String getRequestHeader(final String name) {
-        final String searchName = name.toLowerCase() + HEADER_SEPARATOR;
-        for (final var header : headers) {
-            if (header.toLowerCase().startsWith(searchName))
-                return header.substring(name.length() + HEADER_SEPARATOR.length());
-        }
-        return null;
+        final int header = findHeader(name, 0);
+        return header == -1 ? null : headerValue(header);
     }
     public List<String> getRequestHeaders(final String name) {
         final var headers = new ArrayList<String>();
-
-        final String searchName = name.toLowerCase() + HEADER_SEPARATOR;
-        for (final var header : this.headers) {
-            if (header.toLowerCase().startsWith(searchName))
-                headers.add(header.substring(name.length() + HEADER_SEPARATOR.length()));
+        for (int header = findHeader(name, 0); header != -1; header = findHeader(name, header + 1)) {
+            headers.add(headerValue(header));
         }
-
         return headers;
     }
+    // Compares the first header with this name without creating a String, ignoring case
+    public boolean requestHeaderEqualsIgnoreCase(final String name, final String value) {
+        final int header = findHeader(name, 0);
+        if (header == -1) return false;
+        final int base = header * 4;
+        return equalsIgnoreCase(rawRequest, headerIndex[base + 2], headerIndex[base + 3], value);
+    }
+    // Hands the bytes of the first header with this name to the function, without creating a String.
+    // Returns null when there is no such header.
+    public <T> T applyToRequestHeader(final String name, final BytesFunction<T> function) {
+        final int header = findHeader(name, 0);
+        if (header == -1) return null;
+        final int base = header * 4;
+        return function.apply(rawRequest, headerIndex[base + 2], headerIndex[base + 3]);
+    }
 
     public String getRequestPath() {
         if (path != null) return path;
@@ -122,31 +272,148 @@ public class HttpServerExchange {
         this.path = uri.substring(0, questionOffset != -1 ? questionOffset : uri.length());
         return path;
     }
+    // Used by a router. The router writes the start and end offset of each parameter in the request
+    // path to the returned array, the values only become Strings when they are asked for. A router
+    // that is nested in another keeps the parameters of the outer routes, it writes its own after
+    // the first pathParameterCount() and adds their names while its handler runs.
+    public int pathParameterCount() {
+        return pathParameterNames == null ? 0 : pathParameterNames.length;
+    }
+    public int[] pathParameterIndex(final int parameters) {
+        if (pathParameterIndex.length < parameters * 2) pathParameterIndex = Arrays.copyOf(pathParameterIndex, parameters * 2);
+        return pathParameterIndex;
+    }
+    public String[] getPathParameterNames() {
+        return pathParameterNames;
+    }
+    public void setPathParameterNames(final String[] names) {
+        this.pathParameterNames = names;
+    }
+    public void addPathParameterNames(final String[] names) {
+        if (pathParameterNames == null || pathParameterNames.length == 0) {
+            pathParameterNames = names;
+            return;
+        }
+        final String[] all = Arrays.copyOf(pathParameterNames, pathParameterNames.length + names.length);
+        System.arraycopy(names, 0, all, pathParameterNames.length, names.length);
+        pathParameterNames = all;
+    }
+    // The innermost route wins when nested routes use the same name
+    public String getPathParameter(final String name) {
+        if (pathParameterNames == null) return null;
+        for (int i = pathParameterNames.length - 1; i >= 0; i--) {
+            if (pathParameterNames[i].equals(name))
+                return decodePath(getRequestPath().substring(pathParameterIndex[i * 2], pathParameterIndex[i * 2 + 1]));
+        }
+        return null;
+    }
+
     public String getQueryString() {
         final int questionOffset = uri.indexOf(QUESTION_MARK);
         return questionOffset == -1 ? null : uri.substring(questionOffset + 1);
     }
 
+    // The value of the last parameter with this name, an empty String when it has no value
     public String getQueryParameter(final String name) {
-        if (queryParameters != null) {
-            return queryParameters.get(name);
+        indexQuery();
+        for (int i = queryCount - 1; i >= 0; i--) {
+            if (queryNameEquals(i, name)) return queryValue(i);
+        }
+        return null;
+    }
+    public List<String> getQueryParameters(final String name) {
+        indexQuery();
+        final var values = new ArrayList<String>();
+        for (int i = 0; i < queryCount; i++) {
+            if (queryNameEquals(i, name)) values.add(queryValue(i));
         }
+        return values;
+    }
+
+    // A single pass over the query that records where each name and value is, like the headers.
+    // Names and values are only decoded when they are asked for.
+    private void indexQuery() {
+        if (queryCount != -1) return;
+        queryCount = 0;
+        final byte[] raw = rawRequest;
+        final int question = indexOf(raw, uriStart, uriEnd, (byte) QUESTION_MARK);
+        if (question == -1) return;
+
+        int offset = question + 1;
+        while (offset < uriEnd) {
+            int end = indexOf(raw, offset, uriEnd, (byte) '&');
+            if (end == -1) end = uriEnd;
+            if (end > offset) {
+                final int equals = indexOf(raw, offset, end, (byte) EQUALS);
+                final int base = queryCount * 4;
+                if (base == queryIndex.length) queryIndex = Arrays.copyOf(queryIndex, base * 2);
+                queryIndex[base] = offset;
+                queryIndex[base + 1] = equals == -1 ? end : equals;
+                queryIndex[base + 2] = equals == -1 ? -1 : equals + 1;
+                queryIndex[base + 3] = end;
+                queryCount++;
+            }
+            offset = end + 1;
+        }
+    }
 
-        this.queryParameters = new HashMap<>();
-        final int questionOffset = uri.indexOf(QUESTION_MARK);
-        if (questionOffset == -1) return null;
-
-        final String[] parameters = uri.substring(questionOffset + 1).split(AMPERSAND);
-        for (final String paramPair : parameters) {
-            final int equalsOffset = paramPair.indexOf(EQUALS);
-            if (equalsOffset == -1) queryParameters.put(paramPair, EMPTY);
-            else {
-                final String paramName = decodeUrl(paramPair.substring(0, equalsOffset));
-                final String paramValue = decodeUrl(paramPair.substring(equalsOffset + 1));
-                queryParameters.put(paramName, paramValue);
+    private boolean queryNameEquals(final int parameter, final String name) {
+        final int base = parameter * 4;
+        final int start = queryIndex[base], length = queryIndex[base + 1] - start;
+        for (int i = start; i < start + length; i++) {
+            final byte b = rawRequest[i];
+            // Names that are encoded, or not ASCII, are compared decoded
+            if (b == '%' || b == '+' || b < 0) return name.equals(decodeUrl(rawRequest, start, length));
+        }
+        return Bytes.equals(rawRequest, start, length, name);
+    }
+
+    private String queryValue(final int parameter) {
+        final int base = parameter * 4;
+        final int start = queryIndex[base + 2];
+        return start == -1 ? EMPTY : decodeUrl(rawRequest, start, queryIndex[base + 3] - start);
+    }
+
+    // The value of the first cookie with this name, from any of the Cookie headers
+    public String getCookie(final String name) {
+        indexCookies();
+        for (int i = 0; i < cookieCount; i++) {
+            final int base = i * 4;
+            if (Bytes.equals(rawRequest, cookieIndex[base], cookieIndex[base + 1] - cookieIndex[base], name))
+                return new String(rawRequest, cookieIndex[base + 2], cookieIndex[base + 3] - cookieIndex[base + 2], UTF_8);
+        }
+        return null;
+    }
+
+    // Records where the name and value of each cookie are, the first time a cookie is asked for
+    private void indexCookies() {
+        if (cookieCount != -1) return;
+        cookieCount = 0;
+        final byte[] raw = rawRequest;
+        for (int header = findHeader(COOKIE, 0); header != -1; header = findHeader(COOKIE, header + 1)) {
+            final int start = headerIndex[header * 4 + 2], end = start + headerIndex[header * 4 + 3];
+            int offset = start;
+            while (offset < end) {
+                int pairEnd = indexOf(raw, offset, end, (byte) ';');
+                if (pairEnd == -1) pairEnd = end;
+                final int equals = indexOf(raw, offset, pairEnd, (byte) EQUALS);
+                if (equals != -1) {
+                    int nameStart = offset, nameEnd = equals, valueStart = equals + 1, valueEnd = pairEnd;
+                    while (nameStart < nameEnd && isWhitespace(raw[nameStart])) nameStart++;
+                    while (nameEnd > nameStart && isWhitespace(raw[nameEnd - 1])) nameEnd--;
+                    while (valueStart < valueEnd && isWhitespace(raw[valueStart])) valueStart++;
+                    while (valueEnd > valueStart && isWhitespace(raw[valueEnd - 1])) valueEnd--;
+                    final int base = cookieCount * 4;
+                    if (base == cookieIndex.length) cookieIndex = Arrays.copyOf(cookieIndex, base * 2);
+                    cookieIndex[base] = nameStart;
+                    cookieIndex[base + 1] = nameEnd;
+                    cookieIndex[base + 2] = valueStart;
+                    cookieIndex[base + 3] = valueEnd;
+                    cookieCount++;
+                }
+                offset = pairEnd + 1;
             }
         }
-        return queryParameters.get(name);
     }
 
     public int getStatusCode() {
@@ -188,6 +455,21 @@ public class HttpServerExchange {
     public void send(final InputStream in, final long length) {
         this.responseBody = newInputStreamBody(in, length);
     }
+    public void send(final ResponseBody body) {
+        this.responseBody = body;
+    }
+
+    public static final int DEFAULT_CHUNK_SIZE = 8192;
+    // The writer is called when the response is sent, after the handler returns. Its output is
+    // sent in chunks of at most chunkSize bytes, so the body never has to be held in memory.
+    public void stream(final BodyWriter writer) {
+        stream(writer, DEFAULT_CHUNK_SIZE);
+    }
+    public void stream(final BodyWriter writer, final int chunkSize) {
+        if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be positive");
+        this.responseBody = newStreamingBody(writer);
+        this.chunkSize = chunkSize;
+    }
 
     private static final byte[] RESPONSE_CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(US_ASCII);
     public void requestBodyAccepted() throws IOException {
@@ -195,48 +477,78 @@ public class HttpServerExchange {
             final String expect = getRequestHeader(EXPECT);
             if ("100-continue".equals(expect) ) {
                 out.write(RESPONSE_CONTINUE);
+                out.flush();
             }
         }
     }
 
+    // Chunked bodies are decoded while they are read
     public InputStream getInputStream() {
-        final String contentLength = getRequestHeader(CONTENT_LENGTH);
-        if (contentLength == null) return new ByteArrayInputStream(new byte[0]);
-        final long length = Long.parseLong(contentLength);
-        return new LengthRestrictedInputStream(in, length);
+        if (body != null) return body;
+
+        if (chunkedRequestBody) return body = chunkedBody = new ChunkedInputStream(in, maxRequestBodySize);
+        if (requestBodyLength == 0) return body = InputStream.nullInputStream();
+        return body = new LengthRestrictedInputStream(in, requestBodyLength);
+    }
+    // Only available after a chunked body has been read to the end
+    public String getRequestTrailer(final String name) {
+        return chunkedBody == null ? null : chunkedBody.getTrailer(name);
+    }
+    boolean isRequestBodyTooLarge() {
+        return requestBodyLength > maxRequestBodySize;
     }
     public OutputStream getOutputStream() {
         return out;
     }
 
-    private static final DateTimeFormatter
-        DATE_FORMAT = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss z", ENGLISH)
-            .withZone(ZoneId.of("GMT"));
-
     public void sendResponse() throws IOException {
         if (!responseSent) {
+            final boolean writeBody = methodAllowsResponseBody();
+            final long length = responseBody.getLength();
+            final boolean unknownLength = writeBody && length == UNKNOWN_LENGTH && !noContentLength
+                && !responseHeaders.containsKey(CONTENT_LENGTH);
+            final boolean chunked = unknownLength && HTTP_11.equals(protocol);
+            // Without chunking the end of the body can only be signalled by closing the connection
+            if (unknownLength && !chunked) {
+                closeAfterResponse = true;
+                if (HTTP_10.equals(protocol)) responseHeaders.put(CONNECTION, CLOSE);
+            }
             if (shouldSendHeadResponse()) {
-                final PrintWriter writer = new PrintWriter(out);
-                writer.println(protocol + SPACE + statusCode + SPACE + getMessageForCode(statusCode, statusMessage));
+                // Written in one go, a PrintWriter would hold a monitor during the socket write and
+                // pin the carrier thread of a virtual thread
+                if (headEncoder == null) headEncoder = new ResponseHeadEncoder();
+                headEncoder.statusLine(protocol, statusCode, statusMessage);
                 for (final var header : responseHeaders.entrySet()) {
-                    writer.println(header.getKey() + HEADER_SEPARATOR + header.getValue());
+                    headEncoder.header(header.getKey(), header.getValue());
                 }
-                if (!noContentLength && methodAllowsResponseBody() && !responseHeaders.containsKey(CONTENT_LENGTH)) {
-                    writer.println(CONTENT_LENGTH + HEADER_SEPARATOR + responseBody.getLength());
+                // A HEAD response carries the length of the body the handler set, without sending it
+                if (chunked) {
+                    headEncoder.header(TRANSFER_ENCODING, CHUNKED);
+                } else if (length != UNKNOWN_LENGTH && !noContentLength && !responseHeaders.containsKey(CONTENT_LENGTH)
+                        && (writeBody || responseBody != EMPTY_BODY)) {
+                    headEncoder.contentLength(length);
                 }
                 if (!responseHeaders.containsKey(DATE)) {
-                    writer.println(DATE + HEADER_SEPARATOR + DATE_FORMAT.format(now()));
+                    headEncoder.date();
                 }
-                writer.print(CRLF);
-                writer.flush();
+                headEncoder.end(out);
             }
-            if (methodAllowsResponseBody()) {
+            if (chunked) {
+                final var chunks = new ChunkedOutputStream(out, chunkSize);
+                responseBody.writeTo(chunks);
+                chunks.close();
+            } else if (writeBody) {
                 responseBody.writeTo(out);
             }
+            out.flush();
             responseSent = true;
         }
     }
 
+    boolean isCloseAfterResponse() {
+        return closeAfterResponse;
+    }
+
     public boolean isResponseSent() {
         return responseSent;
     }
@@ -245,7 +557,7 @@ public class HttpServerExchange {
         return responseBody;
     }
     public boolean methodAllowsResponseBody() {
-        return !HEAD.equals(method);
+        return httpMethod != HttpMethod.HEAD;
     }
 
     private boolean shouldSendHeadResponse() throws IOException {
@@ -0,0 +1,289 @@
+package httpserver.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Locale.ENGLISH;
+
+// Reads the parts of a multipart body as they arrive. The input is read in bulk into one buffer,
+// the delimiter in front of each part is found with a Boyer-Moore-Horspool search over it and the
+// data of a part is copied straight out of it. Only the headers of a part have to fit in the
+// buffer, the data can be any size.
+final class MultipartReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024, MAX_HEADER_SIZE = 8 * 1024, MAX_BOUNDARY_LENGTH = 70;
+    private static final byte[] CRLF_CRLF = { '\r', '\n', '\r', '\n' };
+
+    private final InputStream in;
+    // CRLF--boundary, the CRLF belongs to the delimiter and not to the data in front of it
+    private final byte[] delimiter;
+    private final int[] shift = new int[256];
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+    // Everything buffered before safeEnd is data of the current part, when atDelimiter is set
+    // the delimiter starts at safeEnd
+    private int safeEnd;
+    private boolean atDelimiter;
+    private boolean closed;
+    private int partNumber;
+
+    MultipartReader(final InputStream in, final String boundary) throws IOException {
+        if (boundary == null || boundary.isEmpty() || boundary.length() > MAX_BOUNDARY_LENGTH)
+            throw new IOException("Invalid multipart boundary");
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(ISO_8859_1);
+        Arrays.fill(shift, delimiter.length);
+        for (int i = 0; i < delimiter.length - 1; i++) {
+            shift[delimiter[i] & 0xFF] = delimiter.length - 1 - i;
+        }
+        // The first delimiter can be at the very start of the body, without a CRLF in front of it
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        limit = 2;
+    }
+
+    // Skips whatever is left of the current part and returns the raw headers of the next one, up
+    // to and including the empty line. Returns null after the closing delimiter.
+    byte[] nextPart() throws IOException {
+        if (closed) return null;
+        while (!atDelimiter || position != safeEnd) {
+            if (position < safeEnd) position = safeEnd;
+            else scan();
+        }
+        position += delimiter.length;
+        atDelimiter = false;
+        partNumber++;
+
+        require(2);
+        if (buffer[position] == '-' && buffer[position + 1] == '-') {
+            closed = true;
+            return null;
+        }
+        // Transport padding is allowed between the boundary and the CRLF
+        while (buffer[position] == ' ' || buffer[position] == '\t') {
+            position++;
+            require(2);
+        }
+        if (buffer[position] != '\r' || buffer[position + 1] != '\n')
+            throw new IOException("Malformed form, no CRLF after boundary");
+        position += 2;
+
+        final byte[] headers = readHeaders();
+        safeEnd = position;
+        return headers;
+    }
+
+    // Only valid until the next call to nextPart()
+    InputStream partStream() {
+        return new PartInputStream(partNumber);
+    }
+
+    private byte[] readHeaders() throws IOException {
+        require(2);
+        if (buffer[position] == '\r' && buffer[position + 1] == '\n') {
+            position += 2;
+            return Arrays.copyOfRange(buffer, position - 2, position);
+        }
+        int searched = 0;
+        while (true) {
+            final int found = indexOf(CRLF_CRLF, position + searched, limit);
+            if (found != -1) {
+                final byte[] headers = Arrays.copyOfRange(buffer, position, found + CRLF_CRLF.length);
+                position = found + CRLF_CRLF.length;
+                return headers;
+            }
+            if (limit - position > MAX_HEADER_SIZE) throw new IOException("Form part headers too large");
+            searched = Math.max(0, limit - position - CRLF_CRLF.length + 1);
+            if (!readMore()) throw new IOException("Malformed form, no CRLFCRLF after part headers");
+        }
+    }
+
+    // Moves safeEnd up to the next delimiter, or as far as the buffered bytes can't be the start
+    // of one, reading more input when nothing is known to be data yet
+    private void scan() throws IOException {
+        while (true) {
+            final int found = search(position, limit);
+            if (found != -1) {
+                safeEnd = found;
+                atDelimiter = true;
+                return;
+            }
+            safeEnd = Math.max(position, limit - delimiter.length + 1);
+            if (safeEnd > position) return;
+            if (!readMore()) throw new IOException("Malformed form, no closing boundary");
+        }
+    }
+
+    private int search(final int from, final int to) {
+        final int last = delimiter.length - 1;
+        int offset = from;
+        while (offset + last < to) {
+            int i = last;
+            while (buffer[offset + i] == delimiter[i]) {
+                if (i-- == 0) return offset;
+            }
+            offset += shift[buffer[offset + last] & 0xFF];
+        }
+        return -1;
+    }
+
+    private int indexOf(final byte[] target, final int from, final int to) {
+        for (int offset = from; offset + target.length <= to; offset++) {
+            if (Arrays.equals(buffer, offset, offset + target.length, target, 0, target.length))
+                return offset;
+        }
+        return -1;
+    }
+
+    private void require(final int count) throws IOException {
+        while (limit - position < count) {
+            if (!readMore()) throw new IOException("Malformed form, body ends inside a boundary");
+        }
+    }
+
+    // Moves what is left in the buffer to the front and reads as much as fits behind it
+    private boolean readMore() throws IOException {
+        if (endOfInput) return false;
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            safeEnd -= position;
+            position = 0;
+        }
+        final int read = in.read(buffer, limit, buffer.length - limit);
+        if (read == -1) {
+            endOfInput = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    // The parameters after the first ; of a header value like that of Content-Type or
+    // Content-Disposition. Names are lower case and values are unquoted. A name* parameter in the
+    // encoding of RFC 5987 is decoded and wins over the plain one.
+    static Map<String, String> headerParameters(final String value) {
+        final Map<String, String> parameters = new HashMap<>();
+        int i = value.indexOf(';');
+        while (i != -1) {
+            final int equals = value.indexOf('=', i);
+            final int next = value.indexOf(';', i + 1);
+            if (equals == -1) break;
+            if (next != -1 && next < equals) {
+                i = next;
+                continue;
+            }
+            final String name = value.substring(i + 1, equals).trim().toLowerCase(ENGLISH);
+            int start = equals + 1;
+            while (start < value.length() && value.charAt(start) == ' ') start++;
+
+            final String parameter;
+            if (start < value.length() && value.charAt(start) == '"') {
+                final var unquoted = new StringBuilder();
+                int c = start + 1;
+                for (; c < value.length() && value.charAt(c) != '"'; c++) {
+                    if (value.charAt(c) == '\\' && c + 1 < value.length()) c++;
+                    unquoted.append(value.charAt(c));
+                }
+                parameter = unquoted.toString();
+                i = value.indexOf(';', c);
+            } else {
+                parameter = value.substring(start, next == -1 ? value.length() : next).trim();
+                i = next;
+            }
+
+            if (!name.endsWith("*")) parameters.putIfAbsent(name, parameter);
+            else {
+                final String decoded = decodeExtendedValue(parameter);
+                if (decoded != null) parameters.put(name.substring(0, name.length() - 1), decoded);
+            }
+        }
+        return parameters;
+    }
+
+    // charset'language'percent-encoded, only UTF-8 and ISO-8859-1 are required by the RFC
+    private static String decodeExtendedValue(final String value) {
+        final int charsetEnd = value.indexOf('\'');
+        final int languageEnd = charsetEnd == -1 ? -1 : value.indexOf('\'', charsetEnd + 1);
+        if (languageEnd == -1) return null;
+        final String charset = value.substring(0, charsetEnd);
+        if (!charset.equalsIgnoreCase("UTF-8") && !charset.equalsIgnoreCase("ISO-8859-1")) return null;
+
+        final byte[] decoded = new byte[value.length()];
+        int count = 0;
+        for (int i = languageEnd + 1; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c > 0x7F) return null;
+            if (c != '%') decoded[count++] = (byte) c;
+            else {
+                final int high = i + 2 < value.length() ? Character.digit(value.charAt(i + 1), 16) : -1;
+                final int low = high == -1 ? -1 : Character.digit(value.charAt(i + 2), 16);
+                if (low == -1) return null;
+                decoded[count++] = (byte) (high << 4 | low);
+                i += 2;
+            }
+        }
+        return new String(decoded, 0, count, charset.equalsIgnoreCase("UTF-8") ? UTF_8 : ISO_8859_1);
+    }
+
+    private final class PartInputStream extends InputStream {
+
+        private final int part;
+
+        private PartInputStream(final int part) {
+            this.part = part;
+        }
+
+        // Returns how many bytes can be copied from the buffer at position, 0 at the end of the part
+        private int available(final boolean fill) throws IOException {
+            if (part != partNumber || closed) return 0;
+            if (position == safeEnd && !atDelimiter && fill) scan();
+            return safeEnd - position;
+        }
+
+        public int available() throws IOException {
+            return available(false);
+        }
+
+        public int read() throws IOException {
+            return available(true) == 0 ? -1 : buffer[position++] & 0xFF;
+        }
+
+        public int read(final byte[] data, final int offset, final int length) throws IOException {
+            if (length == 0) return 0;
+            final int count = Math.min(length, available(true));
+            if (count == 0) return -1;
+            System.arraycopy(buffer, position, data, offset, count);
+            position += count;
+            return count;
+        }
+
+        public long skip(final long n) throws IOException {
+            if (n <= 0) return 0;
+            final int count = (int) Math.min(n, available(true));
+            position += count;
+            return count;
+        }
+
+        // Writes straight from the buffer, without copying through another one
+        public long transferTo(final OutputStream out) throws IOException {
+            long transferred = 0;
+            int count;
+            while ((count = available(true)) > 0) {
+                out.write(buffer, position, count);
+                position += count;
+                transferred += count;
+            }
+            return transferred;
+        }
+    }
+
+}
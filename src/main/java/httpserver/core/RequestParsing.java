@@ -1,35 +1,26 @@
 package httpserver.core;
 
+import httpserver.error.PayloadTooLarge;
+import httpserver.net.RequestInputStream;
+
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
 
 public enum RequestParsing {;
 
-    public static int readRequestHead(final byte[] data, final InputStream in) throws IOException {
-        data[0] = (byte) in.read();
-        data[1] = (byte) in.read();
-        data[2] = (byte) in.read();
-        data[3] = (byte) in.read();
-        if (hasReadRequest(data, 4)) return 4;
-
-        int offset = 4; int b; while ((b = in.read()) != -1) {
-            data[offset++] = (byte) b;
-            if (hasReadRequest(data, offset)) break;
-            if (offset >= data.length) throw new IOException("Request header data too large");
-        }
-        return offset;
-    }
-
-    private static boolean hasReadRequest(final byte[] data, final int offset) {
-        return data[offset-4] == '\r'
-            && data[offset-3] == '\n'
-            && data[offset-2] == '\r'
-            && data[offset-1] == '\n';
+    // Any bytes read past the request head stay in the connection buffer for the body or the next request
+    public static int readRequestHead(final byte[] data, final RequestInputStream in) throws IOException {
+        return in.readRequestHead(data);
     }
 
-    public static void discardRemainingRequestBody(final HttpServerExchange exchange) throws IOException {
-        final var in = exchange.getInputStream();
-        while (in.read() != -1);
+    // Returns false when the body is larger than allowed, the connection can't be reused then
+    public static boolean discardRemainingRequestBody(final HttpServerExchange exchange) throws IOException {
+        try {
+            exchange.getInputStream().transferTo(OutputStream.nullOutputStream());
+            return true;
+        } catch (final PayloadTooLarge e) {
+            return false;
+        }
     }
 
 }
@@ -1,11 +1,23 @@
 package httpserver.core;
 
+import httpserver.net.ResponseOutputStream;
+
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.READ;
 
 public interface ResponseBody {
 
+    // Bodies that don't know their length up front are sent chunked
+    long UNKNOWN_LENGTH = -1;
+
     long getLength();
     void writeTo(OutputStream out) throws IOException;
 
@@ -22,7 +34,7 @@ public interface ResponseBody {
     public static ResponseBody newByteArrayBody(final byte[] data, final int offset, final int length) {
         return new ResponseBody() {
             public long getLength() {
-                return data.length;
+                return length;
             }
             public void writeTo(OutputStream out) throws IOException {
                 out.write(data, offset, length);
@@ -31,6 +43,87 @@ public interface ResponseBody {
         };
     }
 
+    public static ResponseBody newStreamingBody(final BodyWriter writer) {
+        return new ResponseBody() {
+            public long getLength() {
+                return UNKNOWN_LENGTH;
+            }
+            public void writeTo(final OutputStream out) throws IOException {
+                writer.writeTo(out);
+            }
+        };
+    }
+
+    // The file is opened when the response is sent, its length is taken now
+    public static ResponseBody newFileBody(final Path file) throws IOException {
+        return newFileBody(file, 0, Files.size(file));
+    }
+    public static ResponseBody newFileBody(final Path file, final long position, final long length) {
+        return new ResponseBody() {
+            public long getLength() {
+                return length;
+            }
+            public void writeTo(final OutputStream out) throws IOException {
+                try (final var channel = FileChannel.open(file, READ)) {
+                    transferFile(channel, position, length, out);
+                }
+            }
+        };
+    }
+    // The channel is not closed, it stays owned by the caller
+    public static ResponseBody newFileChannelBody(final FileChannel channel, final long position, final long length) {
+        return new ResponseBody() {
+            public long getLength() {
+                return length;
+            }
+            public void writeTo(final OutputStream out) throws IOException {
+                transferFile(channel, position, length, out);
+            }
+        };
+    }
+
+    private static void transferFile(final FileChannel channel, final long position, final long length,
+                                     final OutputStream out) throws IOException {
+        if (out instanceof final ResponseOutputStream response) {
+            response.transferFrom(channel, position, length);
+            return;
+        }
+
+        final var buffer = ByteBuffer.allocate((int) Math.min(8192, Math.max(1, length)));
+        long offset = position;
+        long remaining = length;
+        while (remaining > 0) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+            final int read = channel.read(buffer, offset);
+            if (read == -1) throw new EOFException("File shorter than the response length");
+            out.write(buffer.array(), 0, read);
+            offset += read;
+            remaining -= read;
+        }
+    }
+
+    // Writes the bytes between position and limit, the buffer itself is not changed
+    public static ResponseBody newByteBufferBody(final ByteBuffer data) {
+        return new ResponseBody() {
+            public long getLength() {
+                return data.remaining();
+            }
+            public void writeTo(final OutputStream out) throws IOException {
+                final var view = data.duplicate();
+                if (out instanceof final ResponseOutputStream response) {
+                    response.write(view);
+                    return;
+                }
+                final byte[] buffer = new byte[Math.min(8192, Math.max(1, view.remaining()))];
+                while (view.hasRemaining()) {
+                    final int length = Math.min(buffer.length, view.remaining());
+                    view.get(buffer, 0, length);
+                    out.write(buffer, 0, length);
+                }
+            }
+        };
+    }
+
     public static ResponseBody newInputStreamBody(final InputStream in, final long length) {
         return new ResponseBody() {
             public long getLength() {
@@ -2,6 +2,7 @@ package httpserver.core;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Function;
@@ -9,6 +10,7 @@ import java.util.function.Function;
 import static httpserver.core.CacheControlStrategy.SET_NOTHING;
 import static httpserver.core.Headers.CONTENT_TYPE;
 import static httpserver.core.Headers.LOCATION;
+import static httpserver.core.ResponseBody.newFileBody;
 import static httpserver.core.StatusCode.FOUND;
 import static httpserver.core.StatusCode.INTERNAL_SERVER_ERROR;
 import static httpserver.util.Functions.requireTrue;
@@ -91,12 +93,25 @@ public final class ResponseBuilder {
         preSend();
         exchange.send(in.readAllBytes());
     }
+    public void send(final Path file) throws IOException {
+        preSend();
+        exchange.send(newFileBody(file));
+    }
     public void send(final Object object) {
         if (toJson == null) throw new IllegalStateException("Missing serializer");
         preSend();
         exchange.send(toJson.apply(object), UTF_8);
     }
 
+    public void stream(final BodyWriter writer) {
+        preSend();
+        exchange.stream(writer);
+    }
+    public void stream(final BodyWriter writer, final int chunkSize) {
+        preSend();
+        exchange.stream(writer, chunkSize);
+    }
+
     public void send() {
         preSend();
     }
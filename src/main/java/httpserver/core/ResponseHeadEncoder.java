@@ -0,0 +1,151 @@
+package httpserver.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static httpserver.core.Headers.*;
+import static httpserver.core.StatusCode.getMessageForCode;
+import static httpserver.util.Strings.*;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Locale.ENGLISH;
+
+// Writes the response head as bytes into a buffer that is kept with the exchange. Status lines,
+// the names of the common headers and the Date value are encoded once and copied in.
+final class ResponseHeadEncoder {
+
+    private static final byte[] CRLF_BYTES = CRLF.getBytes(ISO_8859_1);
+
+    private static final int FIRST_CACHED_STATUS = 100, LAST_CACHED_STATUS = 599;
+    private static final byte[][]
+        STATUS_LINES_10 = newStatusLines(HTTP_10),
+        STATUS_LINES_11 = newStatusLines(HTTP_11);
+
+    private static final Map<String, byte[]> HEADER_NAMES = new HashMap<>();
+    static {
+        for (final var name : List.of(AUTHORIZATION, CACHE_CONTROL, CONNECTION, CONTENT_LENGTH, CONTENT_TYPE,
+                CROSS_ORIGIN_OPENER_POLICY, STRICT_TRANSPORT_SECURITY, X_FRAME_OPTIONS, X_XSS_PROTECTION,
+                X_CONTENT_TYPE_OPTIONS, REFERRER_POLICY, DATE, ETAG, EXPIRES, LOCATION, SET_COOKIE,
+                WWW_AUTHENTICATE, CONTENT_ENCODING, PRAGMA, TRANSFER_ENCODING,
+                ACCEPT_RANGES, CONTENT_RANGE, LAST_MODIFIED, VARY, ALLOW)) {
+            HEADER_NAMES.put(name, (name + HEADER_SEPARATOR).getBytes(ISO_8859_1));
+        }
+    }
+
+    private byte[] buffer = new byte[512];
+    private int count;
+
+    ResponseHeadEncoder statusLine(final String protocol, final int statusCode, final String statusMessage) {
+        count = 0;
+        if (statusMessage == null && statusCode >= FIRST_CACHED_STATUS && statusCode <= LAST_CACHED_STATUS) {
+            if (HTTP_11.equals(protocol)) return append(STATUS_LINES_11[statusCode - FIRST_CACHED_STATUS]);
+            if (HTTP_10.equals(protocol)) return append(STATUS_LINES_10[statusCode - FIRST_CACHED_STATUS]);
+        }
+        return append(protocol).append(SPACE).append(Integer.toString(statusCode)).append(SPACE)
+            .append(getMessageForCode(statusCode, statusMessage)).append(CRLF_BYTES);
+    }
+
+    private static byte[][] newStatusLines(final String protocol) {
+        final byte[][] lines = new byte[LAST_CACHED_STATUS - FIRST_CACHED_STATUS + 1][];
+        for (int code = FIRST_CACHED_STATUS; code <= LAST_CACHED_STATUS; code++) {
+            lines[code - FIRST_CACHED_STATUS] = (protocol + SPACE + code + SPACE + getMessageForCode(code, null) + CRLF)
+                .getBytes(ISO_8859_1);
+        }
+        return lines;
+    }
+
+    ResponseHeadEncoder header(final String name, final String value) {
+        final byte[] encodedName = HEADER_NAMES.get(name);
+        if (encodedName != null) append(encodedName);
+        else append(name).append(HEADER_SEPARATOR);
+        return append(String.valueOf(value)).append(CRLF_BYTES);
+    }
+
+    ResponseHeadEncoder contentLength(final long length) {
+        return append(HEADER_NAMES.get(CONTENT_LENGTH)).append(length).append(CRLF_BYTES);
+    }
+
+    ResponseHeadEncoder date() {
+        return append(HEADER_NAMES.get(DATE)).append(HttpDate.now()).append(CRLF_BYTES);
+    }
+
+    void end(final OutputStream out) throws IOException {
+        append(CRLF_BYTES);
+        out.write(buffer, 0, count);
+    }
+
+    private ResponseHeadEncoder append(final byte[] data) {
+        ensureCapacity(data.length);
+        System.arraycopy(data, 0, buffer, count, data.length);
+        count += data.length;
+        return this;
+    }
+
+    // ASCII is copied char by char, anything else is encoded as UTF-8 like a PrintWriter would
+    private ResponseHeadEncoder append(final String value) {
+        final int length = value.length();
+        ensureCapacity(length);
+        final int start = count;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c > 0x7F) {
+                count = start;
+                return append(value.getBytes(UTF_8));
+            }
+            buffer[count++] = (byte) c;
+        }
+        return this;
+    }
+
+    private ResponseHeadEncoder append(long value) {
+        if (value < 0) return append(Long.toString(value));
+        ensureCapacity(20);
+        final int start = count;
+        do {
+            buffer[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        for (int i = start, j = count - 1; i < j; i++, j--) {
+            final byte swap = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = swap;
+        }
+        return this;
+    }
+
+    private void ensureCapacity(final int extra) {
+        if (count + extra > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + extra));
+    }
+
+    // The Date header has a resolution of one second, so it is formatted at most once per second
+    // and shared by all connections.
+    private enum HttpDate {;
+
+        private static final DateTimeFormatter
+            DATE_FORMAT = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss z", ENGLISH)
+                .withZone(ZoneId.of("GMT"));
+
+        private record Formatted(long second, byte[] value) {}
+        private static volatile Formatted current = new Formatted(-1, null);
+
+        private static byte[] now() {
+            final long second = System.currentTimeMillis() / 1000;
+            Formatted formatted = current;
+            if (formatted.second != second) {
+                final String value = DATE_FORMAT.format(Instant.ofEpochSecond(second));
+                formatted = new Formatted(second, value.getBytes(ISO_8859_1));
+                current = formatted;
+            }
+            return formatted.value;
+        }
+    }
+
+}
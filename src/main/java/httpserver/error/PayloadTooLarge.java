@@ -0,0 +1,21 @@
+package httpserver.error;
+
+import httpserver.core.HttpServerExchange;
+
+import java.io.IOException;
+
+import static httpserver.core.StatusCode.REQUEST_ENTITY_TOO_LARGE;
+
+public final class PayloadTooLarge extends IOException implements HttpError {
+
+    public PayloadTooLarge() {}
+    public PayloadTooLarge(final String message) {
+        super(message);
+    }
+
+    @Override
+    public void processExchange(final HttpServerExchange exchange) {
+        exchange.setStatusCode(REQUEST_ENTITY_TOO_LARGE);
+    }
+
+}
@@ -3,12 +3,7 @@ package httpserver.handlers;
 import httpserver.HttpHandler;
 import httpserver.core.HttpServerExchange;
 import httpserver.error.HttpError;
-import httpserver.util.Functions;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Path;
-import java.util.HashMap;
 import java.util.Set;
 import java.util.function.Consumer;
 
@@ -20,8 +15,6 @@ import static httpserver.core.ResponseBuilder.respond;
 import static httpserver.core.StatusCode.*;
 import static httpserver.error.HttpError.respondError;
 import static httpserver.error.HttpError.respondInternalError;
-import static httpserver.util.Encoding.encodeHex;
-import static httpserver.util.Encoding.sha256;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 public enum Common {;
@@ -64,18 +57,8 @@ public enum Common {;
     }
 
     public static HttpHandler staticHtml(final String content) {
-        final String etag = String.format("\"%s\"", encodeHex(sha256(content, UTF_8)));
-
-        return exchange -> {
-            final var requestEtag = exchange.getRequestHeader(IF_NONE_MATCH);
-            if (etag.equals(requestEtag)) {
-                respond(exchange).status(NOT_MODIFIED).contentType(text_html).send();
-            } else {
-                respond(exchange).status(OK).contentType(text_html)
-                        .cache(STORE_BUT_CHECK_SERVER)
-                        .header(ETAG, etag).send(content);
-            }
-        };
+        final var html = new StaticContent(content.getBytes(UTF_8), text_html.toString());
+        return exchange -> html.send(exchange, STORE_BUT_CHECK_SERVER);
     }
 
     public static boolean matchesEtag(final HttpServerExchange request, final String etag) {
@@ -128,34 +111,14 @@ public enum Common {;
     }
 
     public static HttpHandler resourceHandler(final String wwwroot, final HttpHandler fallback) {
-        final var etagMap = new HashMap<String, String>();
+        return resourceHandler(new ResourceCache(wwwroot), fallback);
+    }
+    public static HttpHandler resourceHandler(final ResourceCache cache, final HttpHandler fallback) {
         return exchange -> {
-            final var requestURI = exchange.getRequestURI();
-            final var data = loadResource(wwwroot, requestURI, null);
-
-            if (data == null) fallback.handleRequest(exchange);
-            else {
-                final var type = toContentType(requestURI);
-                final var etag = String.format("\"%s\"", etagMap.computeIfAbsent(requestURI, k-> encodeHex(sha256(data))));
-
-                final var requestEtag = exchange.getRequestHeader(IF_NONE_MATCH);
-                if (etag.equals(requestEtag)) {
-                    respond(exchange).status(NOT_MODIFIED).cache(STORE_BUT_CHECK_SERVER).contentType(type).send();
-                } else {
-                    respond(exchange).status(OK).cache(STORE_BUT_CHECK_SERVER).contentType(type).header(ETAG, etag).send(data);
-                }
-            }
+            final var resource = cache.get(exchange.getRequestPath());
+            if (resource == null) fallback.handleRequest(exchange);
+            else resource.send(exchange, STORE_BUT_CHECK_SERVER);
         };
     }
-    private static byte[] loadResource(final String prefix, final String requestURI, final byte[] defaultValue) throws IOException {
-        if (requestURI.isBlank() || requestURI.endsWith("/") || requestURI.endsWith("\\")) return defaultValue;
-        final var requestedPath = Path.of(prefix, requestURI).normalize().toString().replace('\\', '/');
-        if (!requestedPath.startsWith(prefix)) return defaultValue;
-
-        try (final InputStream in = Functions.class.getResourceAsStream(requestedPath)) {
-            if (in == null) return defaultValue;
-            return in.readAllBytes();
-        }
-    }
 
 }
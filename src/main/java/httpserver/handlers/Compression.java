@@ -3,25 +3,51 @@ package httpserver.handlers;
 import httpserver.HttpHandler;
 import httpserver.core.HttpServerExchange;
 
+import httpserver.core.ResponseBody;
+import httpserver.util.CompressingOutputStream;
+import httpserver.util.DeflaterPool;
+
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.GZIPOutputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Predicate;
 
-import static httpserver.core.Headers.ACCEPT_ENCODING;
-import static httpserver.core.Headers.CONTENT_ENCODING;
+import static httpserver.core.Headers.*;
+import static httpserver.core.ResponseBody.UNKNOWN_LENGTH;
 import static httpserver.util.Functions.isNullOrEmpty;
+import static java.util.Locale.ENGLISH;
+import static java.util.zip.Deflater.DEFAULT_COMPRESSION;
 
 public enum Compression {;
 
+    public static final int DEFAULT_MINIMUM_SIZE = 1024;
+
+    // Compression happens while the body is written, a body can't reserve more than one Deflater
+    private static final int POOL_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+    private static final DeflaterPool
+        GZIP_DEFLATERS = new DeflaterPool(POOL_SIZE, DEFAULT_COMPRESSION, true),
+        DEFLATE_DEFLATERS = new DeflaterPool(POOL_SIZE, DEFAULT_COMPRESSION, false);
+    // Compressed bodies of known length up to this size are sent with a Content-Length
+    private static final int MAX_BUFFERED_SIZE = 128 * 1024;
+    private static final ArrayBlockingQueue<ByteArrayOutputStream> BUFFERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
     public static HttpHandler compress(final HttpHandler next) {
+        return compress(next, DEFAULT_MINIMUM_SIZE, Compression::isCompressible);
+    }
+    // Bodies smaller than minimumSize, and content types that don't pass the filter, are sent as is.
+    // Bodies of unknown length, and bodies without a content type, are always compressed.
+    public static HttpHandler compress(final HttpHandler next, final int minimumSize, final Predicate<String> contentTypes) {
         return exchange -> {
             next.handleRequest(exchange);
-            if (!exchange.isResponseSent()) {
-                if (acceptsEncoding(exchange, "gzip")) {
-                   compressGzip(exchange);
+            if (isCompressible(exchange, minimumSize, contentTypes)) {
+                exchange.setResponseHeader(VARY, ACCEPT_ENCODING);
+                final String encoding = preferredEncoding(exchange);
+                if ("gzip".equals(encoding)) {
+                    compressGzip(exchange);
                 } else
-                if (acceptsEncoding(exchange, "deflate")) {
+                if ("deflate".equals(encoding)) {
                     compressDeflate(exchange);
                 }
             }
@@ -31,46 +57,167 @@ public enum Compression {;
     public static HttpHandler compressGzip(final HttpHandler next) {
         return exchange -> {
             next.handleRequest(exchange);
-            if (!exchange.isResponseSent() && acceptsEncoding(exchange, "gzip")) {
-                compressGzip(exchange);
+            if (isCompressible(exchange, DEFAULT_MINIMUM_SIZE, Compression::isCompressible)) {
+                exchange.setResponseHeader(VARY, ACCEPT_ENCODING);
+                if (acceptsEncoding(exchange, "gzip")) compressGzip(exchange);
             }
         };
     }
     public static HttpHandler compressDeflate(final HttpHandler next) {
         return exchange -> {
             next.handleRequest(exchange);
-            if (!exchange.isResponseSent() && acceptsEncoding(exchange, "deflate")) {
-                compressDeflate(exchange);
+            if (isCompressible(exchange, DEFAULT_MINIMUM_SIZE, Compression::isCompressible)) {
+                exchange.setResponseHeader(VARY, ACCEPT_ENCODING);
+                if (acceptsEncoding(exchange, "deflate")) compressDeflate(exchange);
             }
         };
     }
 
     public static void compressGzip(final HttpServerExchange exchange) throws IOException {
-        exchange.setResponseHeader(CONTENT_ENCODING, "gzip");
-        try (final ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            try (final GZIPOutputStream gzip = new GZIPOutputStream(out)) {
-                exchange.getResponseBody().writeTo(gzip);
-            }
-            exchange.send(out.toByteArray());
-        }
+        compressBody(exchange, "gzip", GZIP_DEFLATERS);
     }
 
     public static void compressDeflate(final HttpServerExchange exchange) throws IOException {
-        exchange.setResponseHeader(CONTENT_ENCODING, "deflate");
-        try (final ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            try (final DeflaterOutputStream deflate = new DeflaterOutputStream(out)) {
-                exchange.getResponseBody().writeTo(deflate);
+        compressBody(exchange, "deflate", DEFLATE_DEFLATERS);
+    }
+
+    // A body of known length up to MAX_BUFFERED_SIZE is compressed right away into a pooled buffer
+    // and sent with its compressed length, so the connection can stay open for HTTP/1.0 clients and
+    // a HEAD response gets a Content-Length. Larger bodies, and those of unknown length, are
+    // compressed while they are written and sent chunked. A strong ETag would promise the same
+    // bytes as the uncompressed response, so it is made weak.
+    private static void compressBody(final HttpServerExchange exchange, final String encoding, final DeflaterPool pool) throws IOException {
+        final var body = exchange.getResponseBody();
+        final var etag = exchange.getResponseHeader(ETAG);
+        if (etag != null && !etag.startsWith("W/")) exchange.setResponseHeader(ETAG, "W/" + etag);
+        exchange.setResponseHeader(CONTENT_ENCODING, encoding);
+        exchange.removeResponseHeader(CONTENT_LENGTH);
+
+        final long length = body.getLength();
+        if (length != UNKNOWN_LENGTH && length <= MAX_BUFFERED_SIZE) {
+            final var buffer = borrowBuffer();
+            try {
+                final var compressed = new CompressingOutputStream(buffer, pool, "gzip".equals(encoding));
+                try {
+                    body.writeTo(compressed);
+                    compressed.close();
+                } finally {
+                    compressed.release();
+                }
+                exchange.send(buffer.toByteArray());
+            } finally {
+                releaseBuffer(buffer);
             }
-            exchange.send(out.toByteArray());
+            return;
         }
+
+        // An event stream has to reach the client as it is flushed, other bodies compress better in
+        // larger blocks
+        final String contentType = exchange.getResponseHeader(CONTENT_TYPE);
+        final boolean syncFlush = contentType != null && contentType.toLowerCase(ENGLISH).startsWith("text/event-stream");
+        exchange.send(new ResponseBody() {
+            public long getLength() {
+                return UNKNOWN_LENGTH;
+            }
+            public void writeTo(final OutputStream out) throws IOException {
+                final var compressed = new CompressingOutputStream(out, pool, "gzip".equals(encoding), syncFlush);
+                try {
+                    body.writeTo(compressed);
+                    compressed.close();
+                } finally {
+                    compressed.release();
+                }
+            }
+        });
+    }
+
+    private static ByteArrayOutputStream borrowBuffer() {
+        final var buffer = BUFFERS.poll();
+        return buffer != null ? buffer : new ByteArrayOutputStream(8192);
+    }
+    private static void releaseBuffer(final ByteArrayOutputStream buffer) {
+        buffer.reset();
+        BUFFERS.offer(buffer);
+    }
+
+    private static boolean isCompressible(final HttpServerExchange exchange, final int minimumSize,
+                                          final Predicate<String> contentTypes) {
+        if (!isUnencoded(exchange)) return false;
+        final long length = exchange.getResponseBody().getLength();
+        if (length != UNKNOWN_LENGTH && length < minimumSize) return false;
+        final String contentType = exchange.getResponseHeader(CONTENT_TYPE);
+        return isNullOrEmpty(contentType) || contentTypes.test(contentType);
+    }
+
+    // A handler that set Vary: Accept-Encoding has picked the encoding itself, like the
+    // precompressed variants of StaticContent
+    private static boolean isUnencoded(final HttpServerExchange exchange) {
+        return !exchange.isResponseSent() && exchange.getResponseHeader(CONTENT_ENCODING) == null
+            && !ACCEPT_ENCODING.equals(exchange.getResponseHeader(VARY));
     }
 
     public static boolean acceptsEncoding(final HttpServerExchange exchange, final String encoding) {
         final String acceptedEncodings = exchange.getRequestHeader(ACCEPT_ENCODING);
         if (isNullOrEmpty(acceptedEncodings)) return false;
-        for (final String accepted : acceptedEncodings.split(",")) {
-            if (isNullOrEmpty(accepted)) continue;
-            if (encoding.equals(accepted.trim())) return true;
+        return qualityOf(acceptedEncodings, encoding) > 0;
+    }
+
+    // Picks gzip or deflate by their q-values, or returns null when the body should not be encoded
+    public static String preferredEncoding(final HttpServerExchange exchange) {
+        final String acceptedEncodings = exchange.getRequestHeader(ACCEPT_ENCODING);
+        if (isNullOrEmpty(acceptedEncodings)) return null;
+
+        final double gzip = qualityOf(acceptedEncodings, "gzip");
+        final double deflate = qualityOf(acceptedEncodings, "deflate");
+        final double best = Math.max(gzip, deflate);
+        if (best <= 0) return null;
+        // Identity is always acceptable, it only wins when the client explicitly prefers it
+        final double identity = qualityOf(acceptedEncodings, "identity", false);
+        if (identity > best) return null;
+        return gzip >= deflate ? "gzip" : "deflate";
+    }
+
+    // The q-value the header gives to an encoding, a wildcard covers the encodings that aren't listed
+    public static double qualityOf(final String acceptedEncodings, final String encoding) {
+        return qualityOf(acceptedEncodings, encoding, true);
+    }
+    private static double qualityOf(final String acceptedEncodings, final String encoding, final boolean useWildcard) {
+        double wildcard = 0;
+        int start = 0;
+        while (start < acceptedEncodings.length()) {
+            int end = acceptedEncodings.indexOf(',', start);
+            if (end == -1) end = acceptedEncodings.length();
+            final int parameters = acceptedEncodings.indexOf(';', start);
+            final int nameEnd = parameters != -1 && parameters < end ? parameters : end;
+            final String name = acceptedEncodings.substring(start, nameEnd).trim();
+            if (name.equalsIgnoreCase(encoding)) return parseQuality(acceptedEncodings, nameEnd, end);
+            if (useWildcard && name.equals("*")) wildcard = parseQuality(acceptedEncodings, nameEnd, end);
+            start = end + 1;
+        }
+        return wildcard;
+    }
+    private static double parseQuality(final String header, final int start, final int end) {
+        final String parameters = header.substring(start, end);
+        final int q = parameters.toLowerCase(ENGLISH).indexOf("q=");
+        if (q == -1) return 1;
+        final int qEnd = parameters.indexOf(';', q);
+        try {
+            final double quality = Double.parseDouble(parameters.substring(q + 2, qEnd == -1 ? parameters.length() : qEnd).trim());
+            return Math.max(0, Math.min(1, quality));
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static final List<String> COMPRESSIBLE_TYPES = List.of("text/", "application/json",
+        "application/javascript", "application/xml", "image/svg+xml", "application/wasm");
+
+    // Images, video and archives are compressed already
+    public static boolean isCompressible(final String contentType) {
+        if (isNullOrEmpty(contentType)) return false;
+        final String type = contentType.toLowerCase(ENGLISH);
+        for (final String compressible : COMPRESSIBLE_TYPES) {
+            if (type.startsWith(compressible)) return true;
         }
         return false;
     }
@@ -1,27 +1,40 @@
 package httpserver.handlers;
 
 import httpserver.HttpHandler;
-import httpserver.core.HttpServerExchange;
-import httpserver.core.StatusCode;
+import httpserver.util.BytesFunction;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import static httpserver.core.Headers.HOST;
 import static httpserver.core.StatusCode.NOT_FOUND;
+import static httpserver.util.Bytes.equalsIgnoreCase;
+import static httpserver.util.Bytes.hashCodeIgnoreCase;
+import static httpserver.util.Bytes.toLowerCase;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static java.util.Locale.ENGLISH;
-import static java.util.Locale.of;
 
 public class HostRouting {
 
+    private static final int CACHE_SIZE = 2048;
+
     private HttpHandler fallback = exchange -> exchange.setStatusCode(NOT_FOUND);
-    private Map<String, HttpHandler> hosts = new HashMap<>();
+    private final Map<String, HttpHandler> hosts = new LinkedHashMap<>();
 
     public static HostRouting hostRouting() {
         return new HostRouting();
     }
 
+    // The host can be a name like example.com, a suffix like *.example.com, and either can end
+    // with a port to only match requests for that port. An exact name wins over a suffix, the
+    // longest suffix wins over shorter ones and a rule with a port wins over one without.
     public HostRouting host(final String host, final HttpHandler handler) {
+        if (host.lastIndexOf('*') > 0 || (host.startsWith("*") && !host.startsWith("*.")))
+            throw new IllegalArgumentException("A wildcard host must start with *. in " + host);
         this.hosts.put(host.toLowerCase(ENGLISH), handler);
         return this;
     }
@@ -30,21 +43,104 @@ public class HostRouting {
         return this;
     }
 
-
     public HttpHandler build() {
+        final var fallback = this.fallback;
+        final var hosts = new CompiledHosts(this.hosts, fallback);
         return exchange -> {
-            final var hostHeader = removePortSection(exchange.getRequestHeader(HOST));
-            final var handler = hostHeader == null
-                ? fallback
-                : hosts.getOrDefault(hostHeader.toLowerCase(ENGLISH), fallback);
-            handler.handleRequest(exchange);
+            final var handler = exchange.applyToRequestHeader(HOST, hosts);
+            (handler == null ? fallback : handler).handleRequest(exchange);
         };
     }
 
-    private static String removePortSection(final String hostHeader) {
-        if (hostHeader == null) return null;
-        final int offset = hostHeader.lastIndexOf(':');
-        return offset == -1 ? hostHeader : hostHeader.substring(0, offset);
+    // Resolves the handler for a Host header and remembers it in a direct mapped cache, so a Host
+    // value that was seen before is matched against the header bytes without creating a String.
+    // The cache is bounded, a Host value that is overwritten by another one is resolved again.
+    private static final class CompiledHosts implements BytesFunction<HttpHandler> {
+
+        private record Wildcard(String suffix, int port, HttpHandler handler) {}
+        private record Resolved(String host, int hash, HttpHandler handler) {}
+
+        private final Map<String, HttpHandler> exact = new HashMap<>();
+        private final Wildcard[] wildcards;
+        private final HttpHandler fallback;
+        // Entries are immutable, a racing write only costs another resolve
+        private final Resolved[] cache = new Resolved[CACHE_SIZE];
+
+        private CompiledHosts(final Map<String, HttpHandler> hosts, final HttpHandler fallback) {
+            this.fallback = fallback;
+            final List<Wildcard> wildcards = new ArrayList<>();
+            for (final var rule : hosts.entrySet()) {
+                final String host = rule.getKey();
+                if (!host.startsWith("*.")) {
+                    exact.put(host, rule.getValue());
+                    continue;
+                }
+                final int portOffset = portOffset(host);
+                final String suffix = host.substring(1, portOffset == -1 ? host.length() : portOffset);
+                final int port = portOffset == -1 ? -1 : parsePort(host, portOffset + 1);
+                if (portOffset != -1 && port == -1)
+                    throw new IllegalArgumentException("Invalid port in host " + host);
+                wildcards.add(new Wildcard(suffix, port, rule.getValue()));
+            }
+            wildcards.sort(Comparator.comparingInt((Wildcard w) -> -w.suffix.length())
+                .thenComparingInt(w -> w.port == -1 ? 1 : 0));
+            this.wildcards = wildcards.toArray(new Wildcard[0]);
+        }
+
+        public HttpHandler apply(final byte[] data, final int offset, final int length) {
+            final int hash = hashCodeIgnoreCase(data, offset, length);
+            final int index = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+            final var cached = cache[index];
+            if (cached != null && cached.hash == hash && equalsIgnoreCase(data, offset, length, cached.host))
+                return cached.handler;
+
+            final byte[] lowerCase = new byte[length];
+            for (int i = 0; i < length; i++) {
+                lowerCase[i] = (byte) toLowerCase(data[offset + i] & 0xFF);
+            }
+            final String host = new String(lowerCase, ISO_8859_1);
+            final var handler = resolve(host);
+            cache[index] = new Resolved(host, hash, handler);
+            return handler;
+        }
+
+        private HttpHandler resolve(final String value) {
+            final int portOffset = portOffset(value);
+            String host = portOffset == -1 ? value : value.substring(0, portOffset);
+            if (host.endsWith(".")) host = host.substring(0, host.length() - 1);
+            final int port = portOffset == -1 ? -1 : parsePort(value, portOffset + 1);
+
+            if (port != -1) {
+                final var handler = exact.get(host + ":" + port);
+                if (handler != null) return handler;
+            }
+            final var handler = exact.get(host);
+            if (handler != null) return handler;
+
+            for (final var wildcard : wildcards) {
+                if ((wildcard.port == -1 || wildcard.port == port)
+                        && host.length() > wildcard.suffix.length() && host.endsWith(wildcard.suffix))
+                    return wildcard.handler;
+            }
+            return fallback;
+        }
+
+        // The colon of an IPv6 address is inside the brackets
+        private static int portOffset(final String host) {
+            final int offset = host.lastIndexOf(':');
+            return offset > host.lastIndexOf(']') ? offset : -1;
+        }
+
+        private static int parsePort(final String host, final int from) {
+            if (from == host.length() || host.length() - from > 5) return -1;
+            int port = 0;
+            for (int i = from; i < host.length(); i++) {
+                final char c = host.charAt(i);
+                if (c < '0' || c > '9') return -1;
+                port = port * 10 + (c - '0');
+            }
+            return port;
+        }
     }
 
 }
@@ -1,11 +1,11 @@
 package httpserver.handlers;
 
 import httpserver.HttpHandler;
+import httpserver.core.HttpMethod;
 import httpserver.core.HttpServerExchange;
+import httpserver.util.PathTree;
 
-import java.util.HashMap;
-import java.util.Map;
-
+import static httpserver.core.HttpMethod.*;
 import static httpserver.core.StatusCode.NOT_FOUND;
 
 public class MethodPathRouting implements HttpHandler {
@@ -17,7 +17,7 @@ public class MethodPathRouting implements HttpHandler {
         return new MethodPathRouting();
     }
 
-    private final Map<String, Map<String, HttpHandler>> routes = new HashMap<>();
+    private final PathTree<MethodTable<HttpHandler>> routes = new PathTree<>();
     private HttpHandler fallback = exchange -> exchange.setStatusCode(NOT_FOUND);
 
     public MethodPathRouting fallback(final HttpHandler fallback) {
@@ -25,35 +25,58 @@ public class MethodPathRouting implements HttpHandler {
         return this;
     }
     public MethodPathRouting head(final String path, final HttpHandler handler) {
-        routes.computeIfAbsent("HEAD", s -> new HashMap<>()).put(path, handler);
-        return this;
+        return route(HEAD, path, handler);
     }
     public MethodPathRouting get(final String path, final HttpHandler handler) {
-        routes.computeIfAbsent("GET", s -> new HashMap<>()).put(path, handler);
-        return this;
+        return route(GET, path, handler);
     }
     public MethodPathRouting put(final String path, final HttpHandler handler) {
-        routes.computeIfAbsent("PUT", s -> new HashMap<>()).put(path, handler);
-        return this;
+        return route(PUT, path, handler);
     }
     public MethodPathRouting post(final String path, final HttpHandler handler) {
-        routes.computeIfAbsent("POST", s -> new HashMap<>()).put(path, handler);
-        return this;
+        return route(POST, path, handler);
     }
     public MethodPathRouting patch(final String path, final HttpHandler handler) {
-        routes.computeIfAbsent("PATCH", s -> new HashMap<>()).put(path, handler);
-        return this;
+        return route(PATCH, path, handler);
     }
     public MethodPathRouting delete(final String path, final HttpHandler handler) {
-        routes.computeIfAbsent("DELETE", s -> new HashMap<>()).put(path, handler);
+        return route(DELETE, path, handler);
+    }
+    public MethodPathRouting options(final String path, final HttpHandler handler) {
+        return route(OPTIONS, path, handler);
+    }
+
+    // A path can hold {name} segments and end with a *, their values are available from
+    // exchange.getPathParameter(name). A GET route also answers HEAD, and a path that exists under
+    // other methods gets a 405 or the answer to OPTIONS.
+    public MethodPathRouting route(final HttpMethod method, final String path, final HttpHandler handler) {
+        routes.computeIfAbsent(path, MethodTable::new).put(method, handler);
         return this;
     }
 
     @Override
     public void handleRequest(final HttpServerExchange exchange) throws Exception {
-        final var map = routes.get(exchange.getRequestMethod());
-        final var handler = map == null ? fallback : map.getOrDefault(exchange.getRequestPath(), fallback);
-        handler.handleRequest(exchange);
+        final String path = exchange.getRequestPath();
+        final int outer = exchange.pathParameterCount();
+        final var route = routes.find(path, exchange.pathParameterIndex(outer + routes.maxParameters()), outer);
+        if (route == null) {
+            fallback.handleRequest(exchange);
+            return;
+        }
+        final var handler = route.get(exchange.getHttpMethod());
+        if (handler == null) {
+            route.respondWithoutHandler(exchange);
+            return;
+        }
+        // The handler sees the parameters of this route and of the routers this one is nested in,
+        // the outer routers see only theirs again when it returns
+        final String[] outerNames = exchange.getPathParameterNames();
+        exchange.addPathParameterNames(route.names);
+        try {
+            handler.handleRequest(exchange);
+        } finally {
+            exchange.setPathParameterNames(outerNames);
+        }
     }
 
 }
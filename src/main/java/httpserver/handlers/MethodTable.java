@@ -0,0 +1,52 @@
+package httpserver.handlers;
+
+import httpserver.core.HttpMethod;
+import httpserver.core.HttpServerExchange;
+
+import java.util.StringJoiner;
+
+import static httpserver.core.Headers.ALLOW;
+import static httpserver.core.HttpMethod.*;
+import static httpserver.core.StatusCode.METHOD_NOT_ALLOWED;
+import static httpserver.core.StatusCode.NO_CONTENT;
+
+// The handlers of one route, indexed by the ordinal of the method. A GET handler also answers HEAD
+// and OPTIONS is answered from the table, unless a handler was added for them.
+final class MethodTable<H> {
+
+    private static final HttpMethod[] METHODS = HttpMethod.values();
+
+    final String[] names;
+    private final Object[] handlers = new Object[METHODS.length];
+    private String allow = OPTIONS.name();
+
+    MethodTable(final String[] names) {
+        this.names = names;
+    }
+
+    void put(final HttpMethod method, final H handler) {
+        if (method == OTHER) throw new IllegalArgumentException("Can't route unknown methods");
+        handlers[method.ordinal()] = handler;
+
+        final var allowed = new StringJoiner(", ");
+        for (final var m : METHODS) {
+            if (handlers[m.ordinal()] != null || (m == HEAD && handlers[GET.ordinal()] != null) || m == OPTIONS)
+                allowed.add(m.name());
+        }
+        this.allow = allowed.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    H get(final HttpMethod method) {
+        final Object handler = handlers[method.ordinal()];
+        if (handler == null && method == HEAD) return (H) handlers[GET.ordinal()];
+        return (H) handler;
+    }
+
+    // Answers a request without a handler, OPTIONS with the allowed methods and anything else with 405
+    void respondWithoutHandler(final HttpServerExchange exchange) {
+        exchange.setResponseHeader(ALLOW, allow);
+        exchange.setStatusCode(exchange.getHttpMethod() == OPTIONS ? NO_CONTENT : METHOD_NOT_ALLOWED);
+    }
+
+}
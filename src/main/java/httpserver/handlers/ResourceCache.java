@@ -0,0 +1,126 @@
+package httpserver.handlers;
+
+import httpserver.util.BoundedCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static httpserver.core.ContentType.toContentType;
+import static java.lang.Boolean.TRUE;
+
+// Classpath resources with their ETag, content type and compressed variants, bounded by the number
+// of bytes held. Resources are keyed on their normalized path, so a query string or a path with
+// . or .. segments finds the same entry.
+// Paths that don't exist are remembered in a separate set bounded by count, so they can't push
+// resources out and after warmup the classpath is only read again for resources that were evicted.
+public final class ResourceCache {
+
+    public static final long DEFAULT_MAX_BYTES = 32 * 1024 * 1024;
+    public static final int DEFAULT_MAX_MISSING = 1024;
+
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final String wwwroot;
+    private final BoundedCache<String, StaticContent> resources;
+    private final BoundedCache<String, Boolean> missing;
+
+    public ResourceCache(final String wwwroot) {
+        this(wwwroot, DEFAULT_MAX_BYTES);
+    }
+    public ResourceCache(final String wwwroot, final long maxBytes) {
+        this(wwwroot, maxBytes, DEFAULT_MAX_MISSING);
+    }
+    public ResourceCache(final String wwwroot, final long maxBytes, final int maxMissing) {
+        this.wwwroot = wwwroot;
+        this.resources = new BoundedCache<>(maxBytes, resource -> resource.data().length + ENTRY_OVERHEAD);
+        this.missing = new BoundedCache<>(maxMissing, value -> 1);
+    }
+
+    // Returns null when there is no resource for this path
+    public StaticContent get(final String requestPath) throws IOException {
+        final String path = toResourcePath(wwwroot, requestPath);
+        if (path == null) return null;
+        final var cached = resources.get(path);
+        if (cached != null) return cached;
+        if (missing.get(path) != null) return null;
+
+        final var data = loadResource(path);
+        if (data == null) {
+            missing.put(path, TRUE);
+            return null;
+        }
+        final var resource = newResource(path, data);
+        resources.put(path, resource);
+        return resource;
+    }
+
+    // Loads every resource under wwwroot, from a directory or from a jar
+    public ResourceCache preload() throws IOException {
+        final var url = ResourceCache.class.getResource(wwwroot);
+        if (url == null) return this;
+
+        final URI uri;
+        try {
+            uri = url.toURI();
+        } catch (final URISyntaxException e) {
+            throw new IOException("Invalid resource location " + url, e);
+        }
+        if (!"jar".equals(uri.getScheme())) {
+            preload(Path.of(uri));
+            return this;
+        }
+
+        FileSystem jar = null;
+        try {
+            jar = FileSystems.newFileSystem(uri, Map.of());
+        } catch (final FileSystemAlreadyExistsException e) {
+            // Opened elsewhere, so it must stay open
+        }
+        try {
+            preload(jar != null ? jar.getPath(wwwroot) : FileSystems.getFileSystem(uri).getPath(wwwroot));
+        } finally {
+            if (jar != null) jar.close();
+        }
+        return this;
+    }
+
+    private void preload(final Path directory) throws IOException {
+        try (final var files = Files.walk(directory)) {
+            for (final var file : (Iterable<Path>) files::iterator) {
+                if (!Files.isRegularFile(file)) continue;
+                final String path = toResourcePath(wwwroot, "/" + directory.relativize(file).toString().replace('\\', '/'));
+                if (path != null) resources.put(path, newResource(path, Files.readAllBytes(file)));
+            }
+        }
+    }
+
+    private static StaticContent newResource(final String path, final byte[] data) {
+        return new StaticContent(data, toContentType(path));
+    }
+
+    // The classpath location of the request, without the query string and with . and .. resolved.
+    // Null when it doesn't name a file below wwwroot.
+    private static String toResourcePath(final String prefix, final String requestPath) {
+        final int query = requestPath.indexOf('?');
+        final String path = query == -1 ? requestPath : requestPath.substring(0, query);
+        if (path.isBlank() || path.endsWith("/") || path.endsWith("\\")) return null;
+        final var resourcePath = Path.of(prefix, path).normalize().toString().replace('\\', '/');
+        return resourcePath.startsWith(prefix.endsWith("/") ? prefix : prefix + "/") ? resourcePath : null;
+    }
+
+    private static byte[] loadResource(final String path) throws IOException {
+        try (final InputStream in = ResourceCache.class.getResourceAsStream(path)) {
+            if (in == null) return null;
+            return in.readAllBytes();
+        }
+    }
+
+}
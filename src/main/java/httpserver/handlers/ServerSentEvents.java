@@ -3,83 +3,212 @@ package httpserver.handlers;
 import httpserver.HttpHandler;
 import httpserver.core.HttpServerExchange;
 
-import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static httpserver.core.Headers.*;
+import static httpserver.core.StatusCode.NO_CONTENT;
 import static httpserver.core.StatusCode.OK;
-import static java.lang.System.currentTimeMillis;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.MINUTES;
 
+// Broadcasts events to every connected client. An event is encoded once, the bytes are offered to
+// a bounded queue per client. Each client's queue is drained by the thread of its own connection,
+// so a slow client never holds up the others. A client that falls a full queue behind, or whose
+// connection fails, is dropped. The last events are kept to replay to a client that reconnects
+// with a Last-Event-ID header. After close() new requests get a 204, which tells a browser to stop
+// reconnecting.
 public class ServerSentEvents implements HttpHandler {
 
-    private final Timer timer = new Timer();
-    private final List<PrintWriter> connections = new ArrayList<>();
+    public static final int DEFAULT_QUEUE_SIZE = 64, DEFAULT_REPLAY_SIZE = 256;
+
+    private static final byte[]
+        KEEP_ALIVE = ": keep-alive\n\n".getBytes(UTF_8),
+        CLOSE = new byte[0];
+
+    private record Event(String id, byte[] bytes) {}
+
+    private static final class Client {
+        private final BlockingQueue<byte[]> queue;
+        private volatile boolean closed;
+        // Set when the replay didn't fit in the queue, the client gets what fit and then has to
+        // reconnect to get the rest
+        private boolean catchingUp;
+
+        private Client(final int queueSize) {
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+        }
+
+        private void close() {
+            closed = true;
+            queue.clear();
+            queue.offer(CLOSE);
+        }
+    }
+
+    private final long keepAliveMillis;
+    private final int queueSize;
+    private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+    // Held while an event is added to the replay buffer and offered to the clients, so a client
+    // that connects sees every event exactly once, either from the replay or from its queue
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Event[] replay;
+    private int replayNext;
+    private long nextId;
+    private boolean closed;
 
     public ServerSentEvents() {
         this(MINUTES.toMillis(1));
     }
     public ServerSentEvents(final long keepAliveMillis) {
+        this(keepAliveMillis, DEFAULT_QUEUE_SIZE, DEFAULT_REPLAY_SIZE);
+    }
+    public ServerSentEvents(final long keepAliveMillis, final int queueSize, final int replaySize) {
         if (keepAliveMillis < 1000)
             throw new IllegalArgumentException("Set a reasonable time between keep-alive messages; x >= 1000");
-        this.timer.scheduleAtFixedRate(newKeepAliveTask(connections), keepAliveMillis, keepAliveMillis);
+        if (queueSize < 1) throw new IllegalArgumentException("Queue size must be at least 1");
+        if (replaySize < 0) throw new IllegalArgumentException("Replay size can't be negative");
+        this.keepAliveMillis = keepAliveMillis;
+        this.queueSize = queueSize;
+        this.replay = new Event[replaySize];
     }
 
     @Override
-    public void handleRequest(final HttpServerExchange exchange) throws Exception {
+    public void handleRequest(final HttpServerExchange exchange) {
+        final var client = new Client(queueSize);
+        final String lastEventId = exchange.getRequestHeader(LAST_EVENT_ID);
+        lock.lock();
+        try {
+            if (closed) {
+                exchange.setStatusCode(NO_CONTENT);
+                return;
+            }
+            if (lastEventId != null) client.catchingUp = !replayAfter(lastEventId, client);
+            if (!client.catchingUp) clients.add(client);
+        } finally {
+            lock.unlock();
+        }
+
         exchange.setStatusCode(OK);
         exchange.setResponseHeader(CACHE_CONTROL, "no-cache");
-        exchange.setResponseHeader(CONNECTION, "keep-alive");
         exchange.setResponseHeader(CONTENT_TYPE, "text/event-stream");
-        exchange.setNoContentLength();
-        exchange.sendResponse();
+        exchange.stream(out -> {
+            try {
+                drain(client, out);
+            } finally {
+                clients.remove(client);
+                client.closed = true;
+            }
+        });
+    }
 
-        synchronized (connections) {
-            connections.add(new PrintWriter(exchange.getOutputStream()));
+    // Runs on the connection's thread until the client is closed or the connection fails
+    private void drain(final Client client, final OutputStream out) throws IOException {
+        out.flush();
+        while (!client.closed) {
+            byte[] event;
+            try {
+                event = client.catchingUp ? client.queue.poll() : client.queue.poll(keepAliveMillis, MILLISECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (event == null && client.catchingUp) return;
+            if (event == null) event = KEEP_ALIVE;
+            // Everything that is already queued goes out in one flush
+            do {
+                if (event == CLOSE) return;
+                out.write(event);
+            } while ((event = client.queue.poll()) != null);
+            out.flush();
         }
     }
 
     public void sendMessage(final String message) {
-        sendMessage(null, message);
+        sendMessage(null, null, message);
     }
     public void sendMessage(final String id, final String message) {
-        final var event = newSseEvent(id, null, message);
+        sendMessage(id, null, message);
+    }
+    // Without an id the event gets the next number, so clients can resume with Last-Event-ID
+    public void sendMessage(final String id, final String type, final String message) {
+        lock.lock();
+        try {
+            final String eventId = id == null ? Long.toString(nextId++) : id;
+            final var event = new Event(eventId, newSseEvent(eventId, type, message));
+            if (replay.length > 0) {
+                replay[replayNext] = event;
+                replayNext = (replayNext + 1) % replay.length;
+            }
+            for (final var client : clients) {
+                if (!client.queue.offer(event.bytes)) drop(client);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
 
+    public int clientCount() {
+        return clients.size();
     }
 
-    private static TimerTask newKeepAliveTask(final List<PrintWriter> connections) {
-        return new TimerTask() {
-            public void run() {
-                synchronized (connections) {
-                    final var it = connections.iterator();
-                    while (it.hasNext()) {
-                        final var connection = it.next();
-                        final var event = newKeepAliveEvent();
-                        try {
-                            connection.print(event);
-                        } catch (Exception e) {
-                            it.remove();
-                        }
-                    }
-                }
+    // Ends the event stream of every client and turns away new ones
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            for (final var client : clients) {
+                drop(client);
             }
-        };
+        } finally {
+            lock.unlock();
+        }
     }
-    private static String newKeepAliveEvent() {
-        return "id: " + currentTimeMillis() + "\n"
-             + "event: keep-alive\n"
-             + "\n";
+
+    private void drop(final Client client) {
+        clients.remove(client);
+        client.close();
     }
 
-    private static String newSseEvent(final String id, final String type, final String data) {
+    // Queues the events that followed the last one the client saw, nothing when that event is no
+    // longer in the replay buffer. Returns false when they didn't all fit in the queue.
+    private boolean replayAfter(final String lastEventId, final Client client) {
+        for (int i = 0; i < replay.length; i++) {
+            final var event = replay[(replayNext + i) % replay.length];
+            if (event == null || !event.id.equals(lastEventId)) continue;
+            for (int j = i + 1; j < replay.length; j++) {
+                final var next = replay[(replayNext + j) % replay.length];
+                if (next != null && !client.queue.offer(next.bytes)) return false;
+            }
+            return true;
+        }
+        return true;
+    }
+
+    private static byte[] newSseEvent(final String id, final String type, final String data) {
+        requireSingleLine(id);
+        requireSingleLine(type);
         final StringBuilder message = new StringBuilder();
-        message.append("id: ").append(id == null ? currentTimeMillis() : id).append("\n");
-        if (type != null) message.append("event: ").append("\n");
-        if (data != null) message.append("data: ").append(data).append("\n");
-        return message.append("\n").toString();
+        message.append("id: ").append(id).append("\n");
+        if (type != null) message.append("event: ").append(type).append("\n");
+        if (data != null) {
+            // Every line of the data gets its own field, the client joins them with newlines
+            for (final String line : data.split("\r\n|\r|\n", -1)) {
+                message.append("data: ").append(line).append("\n");
+            }
+        }
+        return message.append("\n").toString().getBytes(UTF_8);
+    }
+
+    private static void requireSingleLine(final String value) {
+        if (value != null && (value.indexOf('\n') != -1 || value.indexOf('\r') != -1))
+            throw new IllegalArgumentException("Event ids and types can't contain line breaks");
     }
 
 }
@@ -1,10 +1,10 @@
 package httpserver.handlers;
 
+import httpserver.core.HttpMethod;
 import httpserver.core.HttpServerExchange;
+import httpserver.util.PathTree;
 
-import java.util.HashMap;
-import java.util.Map;
-
+import static httpserver.core.HttpMethod.*;
 import static httpserver.core.StatusCode.NOT_FOUND;
 
 public class SessionMethodPathRouting<T> implements SessionHttpHandler<T> {
@@ -13,7 +13,7 @@ public class SessionMethodPathRouting<T> implements SessionHttpHandler<T> {
         return new SessionMethodPathRouting();
     }
 
-    private final Map<String, Map<String, SessionHttpHandler>> routes = new HashMap<>();
+    private final PathTree<MethodTable<SessionHttpHandler>> routes = new PathTree<>();
     private SessionHttpHandler fallback = (session, exchange) -> exchange.setStatusCode(NOT_FOUND);
 
     public SessionMethodPathRouting fallback(final SessionHttpHandler fallback) {
@@ -21,35 +21,58 @@ public class SessionMethodPathRouting<T> implements SessionHttpHandler<T> {
         return this;
     }
     public SessionMethodPathRouting head(final String path, final SessionHttpHandler handler) {
-        routes.computeIfAbsent("HEAD", s -> new HashMap<>()).put(path, handler);
-        return this;
+        return route(HEAD, path, handler);
     }
     public SessionMethodPathRouting get(final String path, final SessionHttpHandler handler) {
-        routes.computeIfAbsent("GET", s -> new HashMap<>()).put(path, handler);
-        return this;
+        return route(GET, path, handler);
     }
     public SessionMethodPathRouting put(final String path, final SessionHttpHandler handler) {
-        routes.computeIfAbsent("PUT", s -> new HashMap<>()).put(path, handler);
-        return this;
+        return route(PUT, path, handler);
     }
     public SessionMethodPathRouting post(final String path, final SessionHttpHandler handler) {
-        routes.computeIfAbsent("POST", s -> new HashMap<>()).put(path, handler);
-        return this;
+        return route(POST, path, handler);
     }
     public SessionMethodPathRouting patch(final String path, final SessionHttpHandler handler) {
-        routes.computeIfAbsent("PATCH", s -> new HashMap<>()).put(path, handler);
-        return this;
+        return route(PATCH, path, handler);
     }
     public SessionMethodPathRouting delete(final String path, final SessionHttpHandler handler) {
-        routes.computeIfAbsent("DELETE", s -> new HashMap<>()).put(path, handler);
+        return route(DELETE, path, handler);
+    }
+    public SessionMethodPathRouting options(final String path, final SessionHttpHandler handler) {
+        return route(OPTIONS, path, handler);
+    }
+
+    // A path can hold {name} segments and end with a *, their values are available from
+    // exchange.getPathParameter(name). A GET route also answers HEAD, and a path that exists under
+    // other methods gets a 405 or the answer to OPTIONS.
+    public SessionMethodPathRouting route(final HttpMethod method, final String path, final SessionHttpHandler handler) {
+        routes.computeIfAbsent(path, MethodTable::new).put(method, handler);
         return this;
     }
 
     @Override
     public void handleRequest(final T session, final HttpServerExchange exchange) throws Exception {
-        final var map = routes.get(exchange.getRequestMethod());
-        final var handler = map == null ? fallback : map.getOrDefault(exchange.getRequestPath(), fallback);
-        handler.handleRequest(session, exchange);
+        final String path = exchange.getRequestPath();
+        final int outer = exchange.pathParameterCount();
+        final var route = routes.find(path, exchange.pathParameterIndex(outer + routes.maxParameters()), outer);
+        if (route == null) {
+            fallback.handleRequest(session, exchange);
+            return;
+        }
+        final var handler = route.get(exchange.getHttpMethod());
+        if (handler == null) {
+            route.respondWithoutHandler(exchange);
+            return;
+        }
+        // The handler sees the parameters of this route and of the routers this one is nested in,
+        // the outer routers see only theirs again when it returns
+        final String[] outerNames = exchange.getPathParameterNames();
+        exchange.addPathParameterNames(route.names);
+        try {
+            handler.handleRequest(session, exchange);
+        } finally {
+            exchange.setPathParameterNames(outerNames);
+        }
     }
 
 }
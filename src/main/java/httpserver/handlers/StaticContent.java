@@ -0,0 +1,108 @@
+package httpserver.handlers;
+
+import httpserver.core.CacheControlStrategy;
+import httpserver.core.HttpServerExchange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static httpserver.core.Headers.*;
+import static httpserver.core.ResponseBuilder.respond;
+import static httpserver.core.StatusCode.NOT_MODIFIED;
+import static httpserver.core.StatusCode.OK;
+import static httpserver.handlers.Compression.isCompressible;
+import static httpserver.handlers.Compression.preferredEncoding;
+import static httpserver.util.Encoding.encodeHex;
+import static httpserver.util.Encoding.sha256;
+import static java.util.zip.Deflater.BEST_COMPRESSION;
+
+// Content that doesn't change while the server runs. The gzip and deflate variants are compressed
+// once, on the first request that asks for them, and each has its own ETag.
+public final class StaticContent {
+
+    private record Variant(byte[] data, String etag, String encoding) {}
+
+    private final Variant identity;
+    private final String contentType;
+    private final boolean compressible;
+    private volatile Variant gzip, deflate;
+
+    public StaticContent(final byte[] data, final String contentType) {
+        this.identity = new Variant(data, String.format("\"%s\"", encodeHex(sha256(data))), null);
+        this.contentType = contentType;
+        this.compressible = isCompressible(contentType);
+    }
+
+    public byte[] data() {
+        return identity.data;
+    }
+    public String etag() {
+        return identity.etag;
+    }
+    public String contentType() {
+        return contentType;
+    }
+
+    public void send(final HttpServerExchange exchange, final CacheControlStrategy strategy) {
+        final var variant = compressible ? variant(preferredEncoding(exchange)) : identity;
+        if (compressible) exchange.setResponseHeader(VARY, ACCEPT_ENCODING);
+
+        if (variant.etag.equals(exchange.getRequestHeader(IF_NONE_MATCH))) {
+            respond(exchange).status(NOT_MODIFIED).cache(strategy).contentType(contentType).header(ETAG, variant.etag).send();
+            return;
+        }
+        if (variant.encoding != null) exchange.setResponseHeader(CONTENT_ENCODING, variant.encoding);
+        respond(exchange).status(OK).cache(strategy).contentType(contentType).header(ETAG, variant.etag).send(variant.data);
+    }
+
+    private Variant variant(final String encoding) {
+        if ("gzip".equals(encoding)) {
+            var variant = gzip;
+            if (variant == null) gzip = variant = compress(encoding);
+            return variant;
+        }
+        if ("deflate".equals(encoding)) {
+            var variant = deflate;
+            if (variant == null) deflate = variant = compress(encoding);
+            return variant;
+        }
+        return identity;
+    }
+
+    // Racing requests may both compress, they produce the same bytes. A variant that is not
+    // smaller than the original is not worth sending.
+    private Variant compress(final String encoding) {
+        final byte[] compressed = "gzip".equals(encoding) ? gzip(identity.data) : deflate(identity.data);
+        if (compressed.length >= identity.data.length) return identity;
+        final var etag = identity.etag.substring(0, identity.etag.length() - 1) + "-" + encoding + "\"";
+        return new Variant(compressed, etag, encoding);
+    }
+
+    private static byte[] gzip(final byte[] data) {
+        final var bytes = new ByteArrayOutputStream();
+        try (final var out = new GZIPOutputStream(bytes) {{ def.setLevel(BEST_COMPRESSION); }}) {
+            out.write(data);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] deflate(final byte[] data) {
+        final var bytes = new ByteArrayOutputStream();
+        final var deflater = new Deflater(BEST_COMPRESSION);
+        try (final var out = new DeflaterOutputStream(bytes, deflater)) {
+            out.write(data);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+}
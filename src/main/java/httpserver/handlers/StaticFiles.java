@@ -0,0 +1,338 @@
+package httpserver.handlers;
+
+import httpserver.HttpHandler;
+import httpserver.core.CacheControlStrategy;
+import httpserver.core.HttpServerExchange;
+import httpserver.core.ResponseBody;
+import httpserver.util.BoundedCache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static httpserver.core.CacheControlStrategy.STORE_BUT_CHECK_SERVER;
+import static httpserver.core.ContentType.toContentType;
+import static httpserver.core.Headers.*;
+import static httpserver.core.HttpMethod.GET;
+import static httpserver.core.HttpMethod.HEAD;
+import static httpserver.core.ResponseBody.newByteBufferBody;
+import static httpserver.core.ResponseBody.newFileBody;
+import static httpserver.core.StatusCode.*;
+import static httpserver.util.Encoding.decodeUrl;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
+import static java.util.Locale.ENGLISH;
+
+// Serves the files in a directory. Validators are taken from the size and modification time of
+// the file, so conditional and Range requests don't need to read it. Files that are requested
+// more than once are kept memory mapped, up to a bound on the total number of mapped bytes.
+public class StaticFiles {
+
+    private final Path root;
+    private HttpHandler fallback = exchange -> exchange.setStatusCode(NOT_FOUND);
+    private CacheControlStrategy cacheStrategy = STORE_BUT_CHECK_SERVER;
+    private long maxMappedBytes = 64 * 1024 * 1024;
+    private long maxMappedFileSize = 4 * 1024 * 1024;
+    private int maxRanges = 16;
+
+    private StaticFiles(final Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    public static StaticFiles staticFiles(final String root) {
+        return new StaticFiles(Path.of(root));
+    }
+    public static StaticFiles staticFiles(final Path root) {
+        return new StaticFiles(root);
+    }
+
+    public StaticFiles fallback(final HttpHandler fallback) {
+        this.fallback = fallback;
+        return this;
+    }
+    public StaticFiles cache(final CacheControlStrategy strategy) {
+        this.cacheStrategy = strategy;
+        return this;
+    }
+    // Set to 0 to never map files, they are then always sent with FileChannel.transferTo
+    public StaticFiles maxMappedBytes(final long maxMappedBytes) {
+        if (maxMappedBytes < 0)
+            throw new IllegalArgumentException("Max mapped bytes must be a positive number");
+        this.maxMappedBytes = maxMappedBytes;
+        return this;
+    }
+    public StaticFiles maxMappedFileSize(final long maxMappedFileSize) {
+        if (maxMappedFileSize < 0 || maxMappedFileSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Max mapped file size must be between 0 and 2GB");
+        this.maxMappedFileSize = maxMappedFileSize;
+        return this;
+    }
+    public StaticFiles maxRanges(final int maxRanges) {
+        if (maxRanges < 1)
+            throw new IllegalArgumentException("Max ranges must be at least 1");
+        this.maxRanges = maxRanges;
+        return this;
+    }
+
+    public HttpHandler build() {
+        final var mappedFiles = new MappedFiles(maxMappedBytes, maxMappedFileSize);
+        return exchange -> {
+            final var method = exchange.getHttpMethod();
+            final var file = method == GET || method == HEAD ? resolve(exchange.getRequestPath()) : null;
+            final var attributes = file == null ? null : readAttributes(file);
+            if (attributes == null || !attributes.isRegularFile()) fallback.handleRequest(exchange);
+            else serveFile(exchange, file, attributes, mappedFiles);
+        };
+    }
+
+    private Path resolve(final String requestPath) {
+        try {
+            // A '+' in a path is not a space
+            final var decoded = decodeUrl(requestPath.replace("+", "%2B"));
+            if (decoded.indexOf('\0') != -1) return null;
+            final var file = Path.of(root.toString(), decoded).normalize();
+            return file.startsWith(root) ? file : null;
+        } catch (final IllegalArgumentException e) {
+            // Includes InvalidPathException, for paths the file system can't represent
+            return null;
+        }
+    }
+
+    private static BasicFileAttributes readAttributes(final Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    private void serveFile(final HttpServerExchange exchange, final Path file, final BasicFileAttributes attributes,
+                           final MappedFiles mappedFiles) {
+        final long size = attributes.size();
+        // HTTP dates have a resolution of a second
+        final long modified = attributes.lastModifiedTime().toMillis() / 1000 * 1000;
+        final String etag = "\"" + Long.toHexString(modified) + "-" + Long.toHexString(size) + "\"";
+        final String type = toContentType(file.getFileName().toString());
+
+        cacheStrategy.apply(exchange);
+        exchange.setResponseHeader(LAST_MODIFIED, formatHttpDate(modified));
+        exchange.setResponseHeader(ETAG, etag);
+        exchange.setResponseHeader(ACCEPT_RANGES, "bytes");
+
+        if (isNotModified(exchange, etag, modified)) {
+            exchange.setStatusCode(NOT_MODIFIED);
+            return;
+        }
+
+        final var mapped = mappedFiles.get(file, size, modified);
+        final var range = exchange.getRequestHeader(RANGE);
+        final long[] ranges = range == null || !ifRangeMatches(exchange, etag, modified) ? null : parseRanges(range, size);
+        if (ranges == null) {
+            exchange.setStatusCode(OK);
+            exchange.setResponseHeader(CONTENT_TYPE, type);
+            exchange.send(body(file, mapped, 0, size));
+        } else if (ranges.length == 0) {
+            exchange.setStatusCode(REQUESTED_RANGE_NOT_SATISFIABLE);
+            exchange.setResponseHeader(CONTENT_RANGE, "bytes */" + size);
+        } else if (ranges.length == 2) {
+            exchange.setStatusCode(PARTIAL_CONTENT);
+            exchange.setResponseHeader(CONTENT_TYPE, type);
+            exchange.setResponseHeader(CONTENT_RANGE, contentRange(ranges[0], ranges[1], size));
+            exchange.send(body(file, mapped, ranges[0], ranges[1] - ranges[0] + 1));
+        } else {
+            final var boundary = Long.toHexString(ThreadLocalRandom.current().nextLong());
+            exchange.setStatusCode(PARTIAL_CONTENT);
+            exchange.setResponseHeader(CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary);
+            exchange.send(multipartBody(file, mapped, ranges, size, type, boundary));
+        }
+    }
+
+    private static ResponseBody body(final Path file, final ByteBuffer mapped, final long position, final long length) {
+        return mapped != null
+            ? newByteBufferBody(mapped.slice((int) position, (int) length))
+            : newFileBody(file, position, length);
+    }
+
+    private static ResponseBody multipartBody(final Path file, final ByteBuffer mapped, final long[] ranges,
+                                              final long size, final String type, final String boundary) {
+        final var heads = new byte[ranges.length / 2][];
+        final var parts = new ResponseBody[ranges.length / 2];
+        final var end = ("\r\n--" + boundary + "--\r\n").getBytes(ISO_8859_1);
+        long total = end.length;
+        for (int i = 0; i < parts.length; i++) {
+            final long first = ranges[i * 2], last = ranges[i * 2 + 1];
+            heads[i] = ("\r\n--" + boundary + "\r\n" + CONTENT_TYPE + ": " + type + "\r\n"
+                + CONTENT_RANGE + ": " + contentRange(first, last, size) + "\r\n\r\n").getBytes(ISO_8859_1);
+            parts[i] = body(file, mapped, first, last - first + 1);
+            total += heads[i].length + parts[i].getLength();
+        }
+
+        final long length = total;
+        return new ResponseBody() {
+            public long getLength() {
+                return length;
+            }
+            public void writeTo(final OutputStream out) throws IOException {
+                for (int i = 0; i < parts.length; i++) {
+                    out.write(heads[i]);
+                    parts[i].writeTo(out);
+                }
+                out.write(end);
+            }
+        };
+    }
+
+    private static String contentRange(final long first, final long last, final long size) {
+        return "bytes " + first + "-" + last + "/" + size;
+    }
+
+    private static boolean isNotModified(final HttpServerExchange exchange, final String etag, final long modified) {
+        final var ifNoneMatch = exchange.getRequestHeader(IF_NONE_MATCH);
+        if (ifNoneMatch != null) return matchesEtag(ifNoneMatch, etag);
+        final var ifModifiedSince = exchange.getRequestHeader(IF_MODIFIED_SINCE);
+        if (ifModifiedSince == null) return false;
+        final long since = parseHttpDate(ifModifiedSince);
+        return since != -1 && modified <= since;
+    }
+
+    // Weak comparison, as required for If-None-Match
+    private static boolean matchesEtag(final String header, final String etag) {
+        int start = 0;
+        while (start < header.length()) {
+            int end = header.indexOf(',', start);
+            if (end == -1) end = header.length();
+            var candidate = header.substring(start, end).trim();
+            if (candidate.equals("*")) return true;
+            if (candidate.startsWith("W/")) candidate = candidate.substring(2);
+            if (candidate.equals(etag)) return true;
+            start = end + 1;
+        }
+        return false;
+    }
+
+    // Without If-Range the Range header always applies. A changed file gets the full response.
+    private static boolean ifRangeMatches(final HttpServerExchange exchange, final String etag, final long modified) {
+        final var ifRange = exchange.getRequestHeader(IF_RANGE);
+        if (ifRange == null) return true;
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) return ifRange.equals(etag);
+        return parseHttpDate(ifRange) == modified;
+    }
+
+    // Returns the first and last offset of each satisfiable range. Returns null when the header
+    // should be ignored, and an empty array when none of the ranges can be satisfied.
+    private long[] parseRanges(final String header, final long size) {
+        if (!header.regionMatches(true, 0, "bytes=", 0, 6)) return null;
+
+        long[] ranges = new long[4];
+        int count = 0, specs = 0;
+        int start = 6;
+        while (start < header.length()) {
+            int end = header.indexOf(',', start);
+            if (end == -1) end = header.length();
+            final var spec = header.substring(start, end).trim();
+            start = end + 1;
+            if (spec.isEmpty()) continue;
+            if (++specs > maxRanges) return null;
+
+            final int dash = spec.indexOf('-');
+            if (dash == -1) return null;
+            final long first, last;
+            try {
+                if (dash == 0) {
+                    final long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix == 0) continue;
+                    first = Math.max(0, size - suffix);
+                    last = size - 1;
+                } else {
+                    first = Long.parseLong(spec.substring(0, dash));
+                    if (dash == spec.length() - 1) last = size - 1;
+                    else {
+                        final long requestedLast = Long.parseLong(spec.substring(dash + 1));
+                        if (requestedLast < first) return null;
+                        last = Math.min(requestedLast, size - 1);
+                    }
+                }
+            } catch (final NumberFormatException e) {
+                return null;
+            }
+            if (first < 0 || first >= size) continue;
+
+            if (count == ranges.length) ranges = Arrays.copyOf(ranges, count * 2);
+            ranges[count++] = first;
+            ranges[count++] = last;
+        }
+        if (specs == 0) return null;
+        return Arrays.copyOf(ranges, count);
+    }
+
+    private static final DateTimeFormatter
+        HTTP_DATE = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", ENGLISH).withZone(ZoneOffset.UTC);
+
+    private static String formatHttpDate(final long millis) {
+        return HTTP_DATE.format(Instant.ofEpochMilli(millis));
+    }
+    private static long parseHttpDate(final String value) {
+        try {
+            return ZonedDateTime.parse(value.trim(), RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (final DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    // Files are mapped on their second request, one-off downloads are sent from the file. Mappings
+    // that are evicted are released by the garbage collector once no response still uses them.
+    private static final class MappedFiles {
+
+        private static final int MAX_SEEN = 10_000;
+
+        private record MappedFile(long size, long modified, MappedByteBuffer data) {}
+
+        private final long maxFileSize;
+        private final BoundedCache<Path, MappedFile> files;
+        private final Map<Path, Boolean> seen = new ConcurrentHashMap<>();
+
+        private MappedFiles(final long maxBytes, final long maxFileSize) {
+            this.maxFileSize = Math.min(maxFileSize, maxBytes);
+            this.files = new BoundedCache<>(maxBytes, MappedFile::size);
+        }
+
+        private ByteBuffer get(final Path file, final long size, final long modified) {
+            if (size == 0 || size > maxFileSize) return null;
+
+            final var cached = files.get(file);
+            if (cached != null && cached.size == size && cached.modified == modified) return cached.data;
+            if (cached == null && seen.putIfAbsent(file, Boolean.TRUE) == null) {
+                if (seen.size() > MAX_SEEN) seen.clear();
+                return null;
+            }
+
+            final MappedByteBuffer data;
+            try (final var channel = FileChannel.open(file, READ)) {
+                if (channel.size() != size) return null;
+                data = channel.map(READ_ONLY, 0, size);
+            } catch (final IOException e) {
+                return null;
+            }
+            seen.remove(file);
+            files.put(file, new MappedFile(size, modified, data));
+            return data;
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+package httpserver.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+import static httpserver.net.ResponseOutputStream.DEFAULT_BUFFER_SIZE;
+import static java.nio.channels.SelectionKey.OP_READ;
+import static java.nio.channels.SelectionKey.OP_WRITE;
+
+// A non-blocking connection. While idle the selector thread reads into the request buffer. Once a
+// complete request head is available the connection is handed to a worker, which sees blocking
+// streams. When the worker needs to wait for the network it parks until the selector signals.
+final class ChannelConnection implements Runnable {
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final Executor executor;
+    private final Supplier<ConnectionHandler> handlers;
+    private ConnectionHandler handler;
+    private final ChannelInputStream in;
+    private final ResponseOutputStream out;
+    private final Semaphore ready = new Semaphore(0);
+    private volatile boolean waiting = false;
+
+    ChannelConnection(final SocketChannel channel, final SelectionKey key, final Executor executor,
+                      final Supplier<ConnectionHandler> handlers, final int bufferSize) {
+        this.channel = channel;
+        this.key = key;
+        this.executor = executor;
+        this.handlers = handlers;
+        this.in = new ChannelInputStream(bufferSize);
+        this.out = new ResponseOutputStream(new ChannelOutputStream(), DEFAULT_BUFFER_SIZE);
+    }
+
+    // Called by the selector thread
+    void onSelected() {
+        if (waiting) {
+            waiting = false;
+            key.interestOps(0);
+            ready.release();
+            return;
+        }
+
+        try {
+            final int read = in.readAvailable();
+            if (read == -1) close();
+            else if (in.hasRequestHead()) {
+                key.interestOps(0);
+                executor.execute(this);
+            }
+            else if (in.isFull()) close();
+        } catch (final Exception e) {
+            close();
+        }
+    }
+
+    // Called by a worker thread
+    public void run() {
+        try {
+            // Created on the first request so idle connections don't hold the handler's buffers
+            if (handler == null) handler = handlers.get();
+            do {
+                handler.handleInput(channel.socket(), in, out);
+            } while (in.hasRequestHead());
+            key.interestOps(OP_READ);
+            key.selector().wakeup();
+        } catch (final Exception e) {
+            try {
+                out.close();
+            } catch (final IOException ignored) {}
+            close();
+        }
+    }
+
+    void close() {
+        key.cancel();
+        try {
+            channel.close();
+        } catch (final IOException ignored) {
+        } finally {
+            ready.release();
+        }
+    }
+
+    private void await(final int operation) throws IOException {
+        waiting = true;
+        key.interestOps(operation);
+        key.selector().wakeup();
+        ready.acquireUninterruptibly();
+        if (!channel.isOpen()) throw new ClosedChannelException();
+    }
+
+    private final class ChannelInputStream extends RequestInputStream {
+        private final ByteBuffer view;
+
+        private ChannelInputStream(final int bufferSize) {
+            super(bufferSize);
+            this.view = ByteBuffer.wrap(buffer);
+        }
+
+        private int readAvailable() throws IOException {
+            freeSpace();
+            view.limit(buffer.length).position(limit);
+            final int read = channel.read(view);
+            if (read > 0) limit += read;
+            return read;
+        }
+
+        protected int fill() throws IOException {
+            int read; while ((read = readAvailable()) == 0) {
+                await(OP_READ);
+            }
+            return read;
+        }
+    }
+
+    private final class ChannelOutputStream extends OutputStream implements FileTransferTarget {
+        public void write(final int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+        public void write(final byte[] data, final int offset, final int length) throws IOException {
+            write(ByteBuffer.wrap(data, offset, length));
+        }
+        public void write(final ByteBuffer data) throws IOException {
+            while (data.hasRemaining()) {
+                if (channel.write(data) == 0) await(OP_WRITE);
+            }
+        }
+        public void transferFrom(final FileChannel file, final long position, final long length) throws IOException {
+            long offset = position;
+            final long end = position + length;
+            while (offset < end) {
+                final long sent = file.transferTo(offset, end - offset, channel);
+                if (sent > 0) offset += sent;
+                // Nothing is sent both when the socket is full and when the file ended early
+                else if (offset >= file.size()) throw new EOFException("File shorter than the response length");
+                else await(OP_WRITE);
+            }
+        }
+    }
+
+}
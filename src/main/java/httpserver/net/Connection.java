@@ -2,29 +2,49 @@ package httpserver.net;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static httpserver.net.ResponseOutputStream.DEFAULT_BUFFER_SIZE;
 
 public final class Connection {
-    private boolean running = true;
+    private final Socket socket;
+    private volatile boolean running = true;
 
-    public Connection(final Executor executor, final Socket socket, final ConnectionHandler handler)
-            throws IOException {
-        final var out = socket.getOutputStream();
-        final var in = socket.getInputStream();
-        executor.execute(() -> {
-            try (out; in; socket) {
-                while (running) {
-                    handler.handleInput(socket, in, out);
+    public Connection(final Executor executor, final Socket socket, final ConnectionHandler handler,
+                      final int bufferSize, final Set<Connection> connections) throws IOException {
+        this.socket = socket;
+        final var out = new ResponseOutputStream(socket.getOutputStream(), DEFAULT_BUFFER_SIZE);
+        final var in = new SocketInputStream(socket.getInputStream(), bufferSize);
+        connections.add(this);
+        try {
+            executor.execute(() -> {
+                try (out; in; socket) {
+                    while (running) {
+                        handler.handleInput(socket, in, out);
+                    }
+                } catch (final Exception ignored) {
+                } finally {
+                    running = false;
+                    connections.remove(this);
                 }
-            } catch (final Exception ignored) {}
-        });
+            });
+        } catch (final RejectedExecutionException e) {
+            connections.remove(this);
+            stop();
+            throw e;
+        }
     }
 
     public void stop() {
         this.running = false;
+        try {
+            socket.close();
+        } catch (final IOException ignored) {}
     }
 
     public boolean isAlive() {
         return running;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,14 @@
+package httpserver.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// An output that can take file content straight from the file system, or from a mapped file,
+// without copying it through the heap
+interface FileTransferTarget {
+
+    void transferFrom(FileChannel file, long position, long length) throws IOException;
+    void write(ByteBuffer data) throws IOException;
+
+}
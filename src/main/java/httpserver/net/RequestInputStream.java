@@ -0,0 +1,138 @@
+package httpserver.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+
+// A connection owned read buffer. Bytes are read from the network in bulk and handed out from
+// memory. The search for the end of the request head can be resumed after more data comes in.
+public abstract class RequestInputStream extends InputStream {
+
+    protected final byte[] buffer;
+    protected int position;
+    protected int limit;
+    private int scanned;
+
+    protected RequestInputStream(final int bufferSize) {
+        this.buffer = new byte[bufferSize];
+    }
+
+    // Must add at least one byte to the buffer starting at 'limit', or return -1 at end of stream
+    protected abstract int fill() throws IOException;
+
+    public boolean hasRequestHead() {
+        return findRequestHeadEnd() != -1;
+    }
+
+    public int readRequestHead(final byte[] data) throws IOException {
+        int end; while ((end = findRequestHeadEnd()) == -1) {
+            if (isFull()) throw new IOException("Request header data too large");
+            if (fill() == -1) throw new EOFException("Connection closed before request head was complete");
+        }
+
+        final int length = end - position;
+        if (length > data.length) throw new IOException("Request header data too large");
+        System.arraycopy(buffer, position, data, 0, length);
+        position = end;
+        scanned = 0;
+        return length;
+    }
+
+    protected int findRequestHeadEnd() {
+        final int from = Math.max(scanned, position + 3);
+        final int end = indexOfHeadEnd(buffer, from, limit);
+        if (end == -1) {
+            scanned = Math.max(from, limit);
+            return -1;
+        }
+        scanned = end;
+        return end + 1;
+    }
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, LITTLE_ENDIAN);
+    private static final long
+        LINE_FEEDS = 0x0A0A0A0A0A0A0A0AL,
+        LOW_BITS = 0x0101010101010101L,
+        HIGH_BITS = 0x8080808080808080L;
+
+    // Looks at 8 bytes at a time for a line feed, and only then checks the three bytes before it.
+    // Returns the offset of the last byte of the first CRLFCRLF, or -1. Requires from >= 3.
+    private static int indexOfHeadEnd(final byte[] data, final int from, final int to) {
+        int offset = from;
+        for (; offset + 8 <= to; offset += 8) {
+            final long word = (long) LONGS.get(data, offset) ^ LINE_FEEDS;
+            long found = (word - LOW_BITS) & ~word & HIGH_BITS;
+            while (found != 0) {
+                final int candidate = offset + (Long.numberOfTrailingZeros(found) >>> 3);
+                if (isHeadEnd(data, candidate)) return candidate;
+                found &= found - 1;
+            }
+        }
+        for (; offset < to; offset++) {
+            if (isHeadEnd(data, offset)) return offset;
+        }
+        return -1;
+    }
+
+    private static boolean isHeadEnd(final byte[] data, final int offset) {
+        return data[offset] == '\n' && data[offset - 1] == '\r'
+            && data[offset - 2] == '\n' && data[offset - 3] == '\r';
+    }
+
+    protected boolean isFull() {
+        return position == 0 && limit == buffer.length;
+    }
+
+    protected int freeSpace() throws IOException {
+        if (position == limit) {
+            position = limit = scanned = 0;
+        } else if (limit == buffer.length) {
+            if (position == 0) throw new IOException("Request header data too large");
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            scanned = Math.max(0, scanned - position);
+            position = 0;
+        }
+        return buffer.length - limit;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && fill() == -1) return -1;
+        scanned = 0;
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] data, final int offset, final int length) throws IOException {
+        if (length == 0) return 0;
+        if (position == limit && fill() == -1) return -1;
+
+        final int read = Math.min(length, limit - position);
+        System.arraycopy(buffer, position, data, offset, read);
+        position += read;
+        scanned = 0;
+        return read;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        if (n <= 0) return 0;
+        if (position == limit && fill() == -1) return 0;
+
+        final int skipped = (int) Math.min(n, limit - position);
+        position += skipped;
+        scanned = 0;
+        return skipped;
+    }
+
+}
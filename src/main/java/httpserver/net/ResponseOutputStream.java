@@ -0,0 +1,112 @@
+package httpserver.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// A connection owned write buffer. While a flush is held, responses collect in the buffer so that
+// the responses to pipelined requests go out in a single write.
+public final class ResponseOutputStream extends OutputStream {
+
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int count;
+    private boolean holdFlush;
+
+    public ResponseOutputStream(final OutputStream out, final int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[bufferSize];
+    }
+
+    public void holdFlush(final boolean holdFlush) {
+        this.holdFlush = holdFlush;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (count == buffer.length) flushBuffer();
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] data, final int offset, final int length) throws IOException {
+        if (length >= buffer.length) {
+            flushBuffer();
+            out.write(data, offset, length);
+            return;
+        }
+        if (length > buffer.length - count) flushBuffer();
+        System.arraycopy(data, offset, buffer, count, length);
+        count += length;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (holdFlush) return;
+        flushBuffer();
+        out.flush();
+    }
+
+    // Sends part of a file. When the connection is a channel the kernel copies the file to the
+    // socket. Otherwise, or when the file fits in what is left of the buffer, it is read into the
+    // write buffer.
+    public void transferFrom(final FileChannel file, final long position, final long length) throws IOException {
+        if (out instanceof final FileTransferTarget target && length > buffer.length - count) {
+            flushBuffer();
+            target.transferFrom(file, position, length);
+            return;
+        }
+
+        final var view = ByteBuffer.wrap(buffer);
+        long offset = position;
+        long remaining = length;
+        while (remaining > 0) {
+            if (count == buffer.length) flushBuffer();
+            view.limit((int) Math.min(buffer.length, count + remaining)).position(count);
+            final int read = file.read(view, offset);
+            if (read == -1) throw new EOFException("File shorter than the response length");
+            count += read;
+            offset += read;
+            remaining -= read;
+        }
+    }
+
+    // Writes the remaining bytes of the buffer, a channel connection writes a direct or mapped
+    // buffer without copying it to the heap first
+    public void write(final ByteBuffer data) throws IOException {
+        if (out instanceof final FileTransferTarget target && data.remaining() > buffer.length - count) {
+            flushBuffer();
+            target.write(data);
+            return;
+        }
+
+        while (data.hasRemaining()) {
+            if (count == buffer.length) flushBuffer();
+            final int length = Math.min(buffer.length - count, data.remaining());
+            data.get(buffer, count, length);
+            count += length;
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+}
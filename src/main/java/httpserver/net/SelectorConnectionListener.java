@@ -0,0 +1,97 @@
+package httpserver.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import static java.nio.channels.SelectionKey.OP_ACCEPT;
+import static java.nio.channels.SelectionKey.OP_READ;
+
+// Holds all connections on a single selector thread. A connection only occupies a worker from the
+// executor when it has a complete request head buffered, idle keep-alive connections cost nothing
+// but their read buffer.
+public final class SelectorConnectionListener extends ConnectionListener {
+
+    private final int bufferSize;
+
+    public SelectorConnectionListener(final int port, final InetAddress bindAddress, final boolean daemon,
+                                      final int backlog, final Executor executor, final int bufferSize,
+                                      final Supplier<ConnectionHandler> handlers) {
+        super(port, bindAddress, daemon, backlog, executor, handlers);
+        this.bufferSize = bufferSize;
+    }
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+
+    public ConnectionListener start() throws IOException {
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(bindAddress, port), backlog);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, OP_ACCEPT);
+
+        final var thread = new Thread(() -> {
+            while (running) {
+                try {
+                    selector.select(this::onSelected);
+                } catch (final Exception e) {}
+            }
+            closeAll();
+        });
+        thread.setDaemon(daemon);
+        thread.start();
+
+        return this;
+    }
+
+    private void onSelected(final SelectionKey key) {
+        if (!key.isValid()) return;
+        if (key.attachment() instanceof final ChannelConnection connection) {
+            connection.onSelected();
+        } else {
+            accept();
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel; while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                final var key = channel.register(selector, OP_READ);
+                key.attach(new ChannelConnection(channel, key, executor, handlers, bufferSize));
+            }
+        } catch (final IOException e) {}
+    }
+
+    private void closeAll() {
+        for (final var key : selector.keys()) {
+            if (key.attachment() instanceof final ChannelConnection connection)
+                connection.close();
+        }
+        try {
+            selector.close();
+        } catch (final IOException e) {}
+    }
+
+    public void stop() throws IOException {
+        this.running = false;
+
+        try {
+            serverChannel.close();
+        } finally {
+            selector.wakeup();
+        }
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+}
@@ -0,0 +1,54 @@
+package httpserver.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+public final class SocketConnectionListener extends ConnectionListener {
+
+    private final int bufferSize;
+
+    public SocketConnectionListener(final int port, final InetAddress bindAddress, final boolean daemon,
+                                    final int backlog, final Executor executor, final int bufferSize,
+                                    final Supplier<ConnectionHandler> handlers) {
+        super(port, bindAddress, daemon, backlog, executor, handlers);
+        this.bufferSize = bufferSize;
+    }
+
+    private ServerSocket serverSocket;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+
+    public ConnectionListener start() throws IOException {
+        this.serverSocket = new ServerSocket(port, backlog, bindAddress);
+        final var thread = new Thread(() -> {
+            while (running) {
+                try {
+                    new Connection(executor, serverSocket.accept(), handlers.get(), bufferSize, connections);
+                } catch (final Exception e) {}
+            }
+        });
+        thread.setDaemon(daemon);
+        thread.start();
+
+        return this;
+    }
+
+    public void stop() throws IOException {
+        this.running = false;
+
+        try {
+            serverSocket.close();
+        } finally {
+            connections.forEach(Connection::stop);
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+}
@@ -0,0 +1,27 @@
+package httpserver.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+final class SocketInputStream extends RequestInputStream {
+
+    private final InputStream in;
+
+    SocketInputStream(final InputStream in, final int bufferSize) {
+        super(bufferSize);
+        this.in = in;
+    }
+
+    protected int fill() throws IOException {
+        final int free = freeSpace();
+        final int read = in.read(buffer, limit, free);
+        if (read > 0) limit += read;
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
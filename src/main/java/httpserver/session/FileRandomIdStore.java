@@ -0,0 +1,275 @@
+package httpserver.session;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+
+// Keeps sessions in an append-only log in a memory mapped file, so they survive a restart. The
+// heap only holds an index from session id to the position of its newest record. A store or delete
+// appends a record, reads copy the session out of the mapping. When more than half of the log is
+// overwritten, deleted or expired sessions the live records are copied to a new file that replaces
+// the log. That happens on the request that overwrites the record, which waits for the copy and an
+// fsync of the new log while all other session reads and writes wait for it too. Call compact()
+// from a background thread to do it at a better time. Opening the store replays the log, a torn
+// record at the end is where appending resumes.
+//
+// Writes reach the page cache, which survives the process. Call flush() to also survive a crash of
+// the machine.
+public class FileRandomIdStore<T> implements RandomIdStore<T>, Closeable {
+
+    private static final byte STORE = 1, DELETE = 2;
+    // type, created, id length, data length, then the id, the data and a CRC32 of all of it
+    private static final int HEADER_LENGTH = 1 + 8 + 2 + 4, CHECKSUM_LENGTH = 4;
+    private static final int INITIAL_CAPACITY = 1 << 20, MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    public static <T> FileRandomIdStore<T> fileRandomIdStore(final Path file, final Duration timeToLive,
+            final Function<T, byte[]> toBytes, final Function<byte[], T> fromBytes) throws IOException {
+        return new FileRandomIdStore<>(file, timeToLive, toBytes, fromBytes);
+    }
+
+    private static final class Entry {
+        private int offset;
+        private final int length;
+        private final long created;
+
+        private Entry(final int offset, final int length, final long created) {
+            this.offset = offset;
+            this.length = length;
+            this.created = created;
+        }
+    }
+
+    private final Path file;
+    private final long timeToLiveMillis;
+    private final Function<T, byte[]> toBytes;
+    private final Function<byte[], T> fromBytes;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Entry> index = new HashMap<>();
+    private FileChannel channel;
+    private MappedByteBuffer log;
+    private int end;
+    private long liveBytes;
+
+    public FileRandomIdStore(final Path file, final Duration timeToLive, final Function<T, byte[]> toBytes,
+                             final Function<byte[], T> fromBytes) throws IOException {
+        this.file = file;
+        this.timeToLiveMillis = timeToLive.toMillis();
+        this.toBytes = toBytes;
+        this.fromBytes = fromBytes;
+        this.channel = FileChannel.open(file, CREATE, READ, WRITE);
+        final long size = channel.size();
+        if (size > MAX_CAPACITY) throw new IOException("Session log " + file + " is too large");
+        this.log = channel.map(READ_WRITE, 0, Math.max(INITIAL_CAPACITY, size));
+        replay();
+    }
+
+    public Random prngSessionId() {
+        return SessionIds.secureRandom();
+    }
+
+    public void storeSession(final String sessionId, final T session) throws IOException {
+        append(STORE, sessionId, toBytes.apply(session), System.currentTimeMillis());
+    }
+
+    public T retrieveSession(final String sessionId) {
+        final byte[] data;
+        lock.readLock().lock();
+        try {
+            final var entry = index.get(sessionId);
+            if (entry == null || isExpired(entry, System.currentTimeMillis())) return null;
+            data = new byte[log.getInt(entry.offset + 11)];
+            log.get(entry.offset + HEADER_LENGTH + (log.getShort(entry.offset + 9) & 0xFFFF), data);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return fromBytes.apply(data);
+    }
+
+    public void deleteSession(final String sessionId) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (!index.containsKey(sessionId)) return;
+        } finally {
+            lock.readLock().unlock();
+        }
+        append(DELETE, sessionId, new byte[0], System.currentTimeMillis());
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void append(final byte type, final String sessionId, final byte[] data, final long created) throws IOException {
+        final byte[] id = sessionId.getBytes(ISO_8859_1);
+        if (id.length > 0xFFFF) throw new IllegalArgumentException("Session id too long");
+        final int length = HEADER_LENGTH + id.length + data.length + CHECKSUM_LENGTH;
+
+        lock.writeLock().lock();
+        try {
+            if ((long) end + length > log.capacity()) makeRoom(length);
+            final int offset = end;
+            log.put(offset, type).putLong(offset + 1, created).putShort(offset + 9, (short) id.length)
+                .putInt(offset + 11, data.length).put(offset + HEADER_LENGTH, id)
+                .put(offset + HEADER_LENGTH + id.length, data);
+            log.putInt(offset + length - CHECKSUM_LENGTH, checksum(offset, length - CHECKSUM_LENGTH));
+            end += length;
+
+            final var previous = type == STORE
+                ? index.put(sessionId, new Entry(offset, length, created))
+                : index.remove(sessionId);
+            if (previous != null) liveBytes -= previous.length;
+            if (type == STORE) liveBytes += length;
+
+            if (end > INITIAL_CAPACITY && liveBytes < end / 2) compact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Compacts when that frees enough room, otherwise grows the mapping
+    private void makeRoom(final int length) throws IOException {
+        if (liveBytes + length <= log.capacity() / 2) compact();
+        if ((long) end + length <= log.capacity()) return;
+        final long capacity = Math.min(MAX_CAPACITY, Math.max((long) log.capacity() * 2, (long) end + length));
+        if (capacity < (long) end + length) throw new IOException("Session log " + file + " is full");
+        log = channel.map(READ_WRITE, 0, capacity);
+    }
+
+    // Removes expired sessions and copies the records of the others to a new log. Holds the write
+    // lock for the copy and an fsync of the new log, reads and writes of sessions wait for it.
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            final long now = System.currentTimeMillis();
+            index.values().removeIf(entry -> isExpired(entry, now));
+            final var entries = new ArrayList<>(index.values());
+            long live = 0;
+            for (final var entry : entries) live += entry.length;
+            liveBytes = live;
+            final long capacity = Math.max(INITIAL_CAPACITY, Math.min(MAX_CAPACITY, live * 2));
+
+            // The index keeps pointing into the old log until the new one has replaced it
+            final int[] offsets = new int[entries.size()];
+            final var compacted = file.resolveSibling(file.getFileName() + ".compact");
+            final var newChannel = FileChannel.open(compacted, CREATE, TRUNCATE_EXISTING, READ, WRITE);
+            final MappedByteBuffer newLog;
+            int offset = 0;
+            try {
+                newLog = newChannel.map(READ_WRITE, 0, capacity);
+                for (int i = 0; i < offsets.length; i++) {
+                    final var entry = entries.get(i);
+                    newLog.put(offset, log, entry.offset, entry.length);
+                    offsets[i] = offset;
+                    offset += entry.length;
+                }
+                newLog.force();
+                Files.move(compacted, file, ATOMIC_MOVE, REPLACE_EXISTING);
+            } catch (final IOException | RuntimeException e) {
+                newChannel.close();
+                Files.deleteIfExists(compacted);
+                throw e;
+            }
+
+            final var oldChannel = channel;
+            channel = newChannel;
+            log = newLog;
+            end = offset;
+            for (int i = 0; i < offsets.length; i++) entries.get(i).offset = offsets[i];
+            oldChannel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void flush() {
+        lock.writeLock().lock();
+        try {
+            log.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            log.force();
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void replay() {
+        final long now = System.currentTimeMillis();
+        int offset = 0;
+        while (offset + HEADER_LENGTH + CHECKSUM_LENGTH <= log.capacity()) {
+            final byte type = log.get(offset);
+            if (type != STORE && type != DELETE) break;
+            final int idLength = log.getShort(offset + 9) & 0xFFFF;
+            final int dataLength = log.getInt(offset + 11);
+            final long length = (long) HEADER_LENGTH + idLength + dataLength + CHECKSUM_LENGTH;
+            if (dataLength < 0 || offset + length > log.capacity()) break;
+            if (log.getInt(offset + (int) length - CHECKSUM_LENGTH) != checksum(offset, (int) length - CHECKSUM_LENGTH)) break;
+
+            final byte[] id = new byte[idLength];
+            log.get(offset + HEADER_LENGTH, id);
+            final String sessionId = new String(id, ISO_8859_1);
+            final var previous = type == STORE
+                ? index.put(sessionId, new Entry(offset, (int) length, log.getLong(offset + 1)))
+                : index.remove(sessionId);
+            if (previous != null) liveBytes -= previous.length;
+            if (type == STORE) liveBytes += length;
+            offset += (int) length;
+        }
+        end = offset;
+        // A record that was torn by a crash is zeroed, so what is left of it after a shorter record
+        // can't be replayed later
+        if (end + HEADER_LENGTH <= log.capacity() && log.get(end) != 0) {
+            final long torn = HEADER_LENGTH + (log.getShort(end + 9) & 0xFFFF) + (log.getInt(end + 11) & 0xFFFFFFFFL) + CHECKSUM_LENGTH;
+            final long tornEnd = Math.min(log.capacity(), end + torn);
+            for (int i = end; i < tornEnd; i++) log.put(i, (byte) 0);
+        }
+
+        final var expired = index.values().iterator();
+        while (expired.hasNext()) {
+            final var entry = expired.next();
+            if (!isExpired(entry, now)) continue;
+            liveBytes -= entry.length;
+            expired.remove();
+        }
+    }
+
+    private int checksum(final int offset, final int length) {
+        final var crc = new CRC32();
+        crc.update(log.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    private boolean isExpired(final Entry entry, final long now) {
+        return now - entry.created >= timeToLiveMillis;
+    }
+
+}
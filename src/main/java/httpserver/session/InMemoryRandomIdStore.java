@@ -0,0 +1,196 @@
+package httpserver.session;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Keeps sessions in memory, spread over shards that each have their own lock. Each shard is a map in
+// access order, so the least recently used session is the first to go when a shard is full and the
+// first to check for an idle timeout. A shard also queues its sessions in the order they were
+// stored, which is the order their absolute timeout passes in, so a session that is still used
+// doesn't hold its slot past that. Every store sweeps a few expired sessions from the shard it
+// writes to, removeExpired() sweeps everything and can be called from a scheduled task.
+public class InMemoryRandomIdStore<T> implements RandomIdStore<T> {
+
+    public static final int DEFAULT_SHARDS = 64;
+    private static final int SWEEP_PER_STORE = 8;
+
+    public static <T> InMemoryRandomIdStore<T> inMemoryRandomIdStore(final int maxSessions, final Duration idleTimeout,
+                                                                     final Duration absoluteTimeout) {
+        return new InMemoryRandomIdStore<>(maxSessions, idleTimeout, absoluteTimeout, DEFAULT_SHARDS);
+    }
+
+    private static final class Entry<T> {
+        private final String sessionId;
+        private final T session;
+        private final long created;
+        private long lastAccess;
+        private boolean removed;
+
+        private Entry(final String sessionId, final T session, final long now) {
+            this.sessionId = sessionId;
+            this.session = session;
+            this.created = now;
+            this.lastAccess = now;
+        }
+    }
+
+    private static final class Shard<T> extends LinkedHashMap<String, Entry<T>> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int maxSessions;
+        // Removed sessions stay in the queue until they reach its head or the queue gets too long
+        private final ArrayDeque<Entry<T>> byCreation = new ArrayDeque<>();
+
+        private Shard(final int maxSessions) {
+            super(16, 0.75f, true);
+            this.maxSessions = maxSessions;
+        }
+
+        protected boolean removeEldestEntry(final Map.Entry<String, Entry<T>> eldest) {
+            if (size() <= maxSessions) return false;
+            eldest.getValue().removed = true;
+            return true;
+        }
+
+        private void add(final Entry<T> entry) {
+            final var previous = put(entry.sessionId, entry);
+            if (previous != null) previous.removed = true;
+            byCreation.addLast(entry);
+            if (byCreation.size() > 2 * maxSessions) byCreation.removeIf(queued -> queued.removed);
+        }
+
+        private void delete(final String sessionId) {
+            final var entry = remove(sessionId);
+            if (entry != null) entry.removed = true;
+        }
+    }
+
+    private final Shard<T>[] shards;
+    private final long idleTimeoutMillis;
+    private final long absoluteTimeoutMillis;
+
+    @SuppressWarnings("unchecked")
+    public InMemoryRandomIdStore(final int maxSessions, final Duration idleTimeout, final Duration absoluteTimeout,
+                                 final int shards) {
+        if (maxSessions < 1) throw new IllegalArgumentException("Max sessions must be at least 1");
+        if (Integer.bitCount(shards) != 1) throw new IllegalArgumentException("The number of shards must be a power of 2");
+        this.idleTimeoutMillis = idleTimeout.toMillis();
+        this.absoluteTimeoutMillis = absoluteTimeout.toMillis();
+        // Every shard holds at least one session, so there are no more shards than sessions. The
+        // sessions that don't divide evenly go to the first shards.
+        final int shardCount = Math.min(shards, Integer.highestOneBit(maxSessions));
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            this.shards[i] = new Shard<>(maxSessions / shardCount + (i < maxSessions % shardCount ? 1 : 0));
+        }
+    }
+
+    public Random prngSessionId() {
+        return SessionIds.secureRandom();
+    }
+
+    public void storeSession(final String sessionId, final T session) {
+        final long now = System.currentTimeMillis();
+        final var shard = shardOf(sessionId);
+        shard.lock.lock();
+        try {
+            sweep(shard, now, SWEEP_PER_STORE);
+            shard.add(new Entry<>(sessionId, session, now));
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    public T retrieveSession(final String sessionId) {
+        final long now = System.currentTimeMillis();
+        final var shard = shardOf(sessionId);
+        shard.lock.lock();
+        try {
+            final var entry = shard.get(sessionId);
+            if (entry == null) return null;
+            if (isExpired(entry, now)) {
+                shard.delete(sessionId);
+                return null;
+            }
+            entry.lastAccess = now;
+            return entry.session;
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    public void deleteSession(final String sessionId) {
+        final var shard = shardOf(sessionId);
+        shard.lock.lock();
+        try {
+            shard.delete(sessionId);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    // Removes every expired session, locking one shard at a time
+    public void removeExpired() {
+        final long now = System.currentTimeMillis();
+        for (final var shard : shards) {
+            shard.lock.lock();
+            try {
+                shard.values().removeIf(entry -> {
+                    if (!isExpired(entry, now)) return false;
+                    entry.removed = true;
+                    return true;
+                });
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (final var shard : shards) {
+            shard.lock.lock();
+            try {
+                size += shard.size();
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    // Sessions past their absolute timeout are found in the order they were stored, idle ones in the
+    // access order of the shard. Both stop at the first session that hasn't expired.
+    private void sweep(final Shard<T> shard, final long now, final int limit) {
+        for (int i = 0; i < limit && !shard.byCreation.isEmpty(); i++) {
+            final var oldest = shard.byCreation.peekFirst();
+            if (!oldest.removed) {
+                if (now - oldest.created < absoluteTimeoutMillis) break;
+                shard.delete(oldest.sessionId);
+            }
+            shard.byCreation.pollFirst();
+        }
+
+        final Iterator<Entry<T>> entries = shard.values().iterator();
+        for (int i = 0; i < limit && entries.hasNext(); i++) {
+            final var entry = entries.next();
+            if (!isExpired(entry, now)) return;
+            entry.removed = true;
+            entries.remove();
+        }
+    }
+
+    private boolean isExpired(final Entry<T> entry, final long now) {
+        return now - entry.lastAccess >= idleTimeoutMillis || now - entry.created >= absoluteTimeoutMillis;
+    }
+
+    private Shard<T> shardOf(final String sessionId) {
+        final int hash = sessionId.hashCode();
+        return shards[(hash ^ (hash >>> 16)) & (shards.length - 1)];
+    }
+
+}
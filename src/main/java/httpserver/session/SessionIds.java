@@ -0,0 +1,22 @@
+package httpserver.session;
+
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+// SecureRandom is thread safe, a few instances keep threads from queueing on one of them. Virtual
+// threads are not reused, so a SecureRandom per thread would be seeded per request.
+enum SessionIds {;
+
+    private static final SecureRandom[] RANDOMS = new SecureRandom[Runtime.getRuntime().availableProcessors()];
+    static {
+        for (int i = 0; i < RANDOMS.length; i++) {
+            RANDOMS[i] = new SecureRandom();
+        }
+    }
+
+    static Random secureRandom() {
+        return RANDOMS[ThreadLocalRandom.current().nextInt(RANDOMS.length)];
+    }
+
+}
@@ -0,0 +1,26 @@
+package httpserver.session;
+
+import httpserver.util.HmacSha256;
+
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+// The HMAC of each token store, so its key pads are hashed once and not on every token. A store
+// that returns another key gets a new HMAC, one that is no longer used is dropped with it.
+enum SessionMacs {;
+
+    private record KeyedMac(byte[] key, HmacSha256 mac) {}
+
+    private static final Map<TokenSessionStore<?>, KeyedMac> MACS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    static HmacSha256 forStore(final TokenSessionStore<?> store, final byte[] key) {
+        final var cached = MACS.get(store);
+        if (cached != null && MessageDigest.isEqual(cached.key, key)) return cached.mac;
+        final var mac = new HmacSha256(key);
+        MACS.put(store, new KeyedMac(key.clone(), mac));
+        return mac;
+    }
+
+}
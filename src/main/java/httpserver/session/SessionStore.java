@@ -4,11 +4,6 @@ import httpserver.core.HttpServerExchange;
 import httpserver.error.InvalidInput;
 
 import java.io.IOException;
-import java.util.List;
-
-import static httpserver.core.Headers.COOKIE;
-import static httpserver.util.Chars.EQUALS;
-import static httpserver.util.Strings.SEMI_COLON;
 
 public interface SessionStore<T> {
 
@@ -27,18 +22,8 @@ public interface SessionStore<T> {
 
     public static String getValueForCookie(final HttpServerExchange exchange, final String cookieName,
                                            final String defaultValue) {
-        final List<String> headers = exchange.getRequestHeaders(COOKIE);
-        if (headers == null || headers.isEmpty()) return defaultValue;
-
-        final String cookiePrefix = cookieName + EQUALS;
-        for (final String header : headers) {
-            for (final String cookie: header.split(SEMI_COLON)) {
-                if (cookie.trim().startsWith(cookiePrefix)) {
-                    return cookie.substring(cookie.indexOf(EQUALS)+1).trim();
-                }
-            }
-        }
-        return defaultValue;
+        final String value = exchange.getCookie(cookieName);
+        return value == null ? defaultValue : value;
     }
 
 }
@@ -0,0 +1,136 @@
+package httpserver.session;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// A list of revoked tokens. A Bloom filter outside the heap answers most lookups with a few hashes,
+// only when it reports a hit is the exact set of revoked tokens checked. Revocations are kept in two
+// generations that rotate once per token lifetime, a revocation lives for at least one lifetime and
+// at most two, so the list never grows beyond the revocations of two lifetimes.
+//
+// A revoked token is forgotten after that. This is only safe when no token is accepted longer than
+// the lifetime after it was issued, check isExpired() for every token. TokenSessionStore puts the
+// issue time in its tokens and does this check when it has a revocation list.
+public final class TokenRevocations {
+
+    private static final class Generation {
+        private final ByteBuffer bits;
+        private final Set<String> tokens = ConcurrentHashMap.newKeySet();
+
+        private Generation(final int bitCount) {
+            this.bits = ByteBuffer.allocateDirect((bitCount + 63) / 64 * 8);
+        }
+
+        private void clear() {
+            for (int i = 0; i < bits.capacity(); i += 8) {
+                bits.putLong(i, 0);
+            }
+            tokens.clear();
+        }
+    }
+    private record Generations(Generation current, Generation previous) {}
+
+    private final int bitCount;
+    private final int hashCount;
+    private final long lifetimeMillis;
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile Generations generations;
+    private volatile long rotateAt;
+    // Written after every change, read before every lookup, so lookups see the bits of earlier revocations
+    private volatile int version;
+
+    // Sized for the revocations expected in one token lifetime. Tokens must not be accepted for
+    // longer than maxTokenLifetime, or a revoked token becomes valid again once it is forgotten.
+    public TokenRevocations(final int expectedRevocations, final double falsePositiveRate, final Duration maxTokenLifetime) {
+        if (expectedRevocations < 1) throw new IllegalArgumentException("Expected revocations must be at least 1");
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+        final double bits = -expectedRevocations * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        this.bitCount = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, Math.ceil(bits)));
+        this.hashCount = Math.max(1, (int) Math.round(bitCount / (double) expectedRevocations * Math.log(2)));
+        this.lifetimeMillis = maxTokenLifetime.toMillis();
+        this.generations = new Generations(new Generation(bitCount), new Generation(bitCount));
+        this.rotateAt = System.currentTimeMillis() + lifetimeMillis;
+    }
+
+    public void revoke(final String token) {
+        lock.lock();
+        try {
+            rotateIfDue();
+            final var current = generations.current;
+            final long hash = hash(token);
+            for (int i = 0; i < hashCount; i++) {
+                final int bit = bitOf(hash, i);
+                final int offset = (bit >>> 6) << 3;
+                current.bits.putLong(offset, current.bits.getLong(offset) | 1L << bit);
+            }
+            current.tokens.add(token);
+            version++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // True when the token was issued a lifetime or more ago, its revocation could be forgotten
+    public boolean isExpired(final long issuedAtMillis) {
+        return System.currentTimeMillis() - issuedAtMillis >= lifetimeMillis;
+    }
+
+    public boolean isRevoked(final String token) {
+        if (System.currentTimeMillis() >= rotateAt) {
+            lock.lock();
+            try {
+                rotateIfDue();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        if (version == 0) return false;
+        final long hash = hash(token);
+        final var generations = this.generations;
+        return isRevoked(generations.current, hash, token) || isRevoked(generations.previous, hash, token);
+    }
+
+    private boolean isRevoked(final Generation generation, final long hash, final String token) {
+        for (int i = 0; i < hashCount; i++) {
+            final int bit = bitOf(hash, i);
+            if ((generation.bits.getLong((bit >>> 6) << 3) & 1L << bit) == 0) return false;
+        }
+        return generation.tokens.contains(token);
+    }
+
+    // The oldest generation only holds tokens that expired, it is cleared and becomes the current one
+    private void rotateIfDue() {
+        final long now = System.currentTimeMillis();
+        if (now < rotateAt) return;
+        final var expired = generations.previous;
+        expired.clear();
+        generations = new Generations(expired, generations.current);
+        rotateAt = now - rotateAt >= lifetimeMillis ? now + lifetimeMillis : rotateAt + lifetimeMillis;
+        version++;
+    }
+
+    // Double hashing from the two halves of one 64 bit hash, see Kirsch and Mitzenmacher
+    private int bitOf(final long hash, final int i) {
+        final int h1 = (int) hash, h2 = (int) (hash >>> 32) | 1;
+        return ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+    }
+
+    // FNV-1a over the characters, with the MurmurHash3 finalizer to spread the bits
+    private static long hash(final String token) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < token.length(); i++) {
+            hash = (hash ^ token.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
@@ -2,6 +2,8 @@ package httpserver.session;
 
 import httpserver.core.HttpServerExchange;
 import httpserver.error.Forbidden;
+import httpserver.util.BoundedCache;
+import httpserver.util.HmacSha256;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -9,6 +11,7 @@ import java.nio.charset.Charset;
 import static httpserver.core.Headers.SET_COOKIE;
 import static httpserver.session.SessionStore.getValueForCookie;
 import static httpserver.util.Encoding.*;
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 public interface TokenSessionStore<T> extends SessionStore<T> {
@@ -39,29 +42,72 @@ public interface TokenSessionStore<T> extends SessionStore<T> {
     default void deleteSession(final HttpServerExchange exchange) {
         final String sessionId = getValueForCookie(exchange, sessionCookieName(), null);
         if (sessionId == null) return;
+        final var revocations = getRevocations();
+        if (revocations != null) revocations.revoke(sessionId);
         exchange.setResponseHeader(SET_COOKIE, sessionCookieName() + "=" + sessionCookieConfiguration());
     }
 
     byte[] sessionToJson(T session, Charset charset);
     T sessionFromJson(String json);
 
+    // The HMAC for the validation key. The default keeps one per store and makes a new one when the
+    // key changes, override to return an instance that the store holds itself.
+    default HmacSha256 getSessionMac() {
+        return SessionMacs.forStore(this, getSessionValidationKey());
+    }
+    // Return a cache to let tokens that were seen before skip verification and decoding. Only
+    // tokens that passed verification are put in the cache.
+    default BoundedCache<String, T> getSessionCache() {
+        return null;
+    }
+    // Return a revocation list to reject revoked tokens, deleteSession then revokes the token. Tokens
+    // then carry the time they were issued, and are rejected once they are older than the token
+    // lifetime of the list. Tokens made without a revocation list are rejected too.
+    default TokenRevocations getRevocations() {
+        return null;
+    }
+
+    // session.signature, or session.issued-at.signature when there is a revocation list
     private String toSessionValue(final T session) {
-        final String encodedSession = encodeBase64Url(sessionToJson(session, UTF_8));
-        return encodedSession + "." + toVerification(getSessionValidationKey(), encodedSession);
+        String signedValue = encodeBase64Url(sessionToJson(session, UTF_8));
+        if (getRevocations() != null) signedValue += "." + System.currentTimeMillis();
+        final byte[] signature = getSessionMac().sign(signedValue.getBytes(US_ASCII));
+        return signedValue + "." + encodeBase64Url(signature);
     }
     default T fromSessionValue(final String sessionValue) throws Forbidden {
-        final String[] encodedSession = sessionValue.split("\\.");
-        if (isValidSession(encodedSession, getSessionValidationKey()))
+        final var revocations = getRevocations();
+        if (revocations != null && revocations.isRevoked(sessionValue)) throw new Forbidden("Revoked session");
+
+        final int signatureDot = sessionValue.lastIndexOf('.');
+        final int sessionEnd = revocations == null ? signatureDot : sessionValue.lastIndexOf('.', signatureDot - 1);
+        if (sessionEnd == -1 || sessionValue.indexOf('.') != sessionEnd) throw new Forbidden("Invalid session");
+        if (revocations != null) {
+            try {
+                if (revocations.isExpired(Long.parseLong(sessionValue.substring(sessionEnd + 1, signatureDot))))
+                    throw new Forbidden("Expired session");
+            } catch (final NumberFormatException e) {
+                throw new Forbidden("Invalid session");
+            }
+        }
+
+        final var cache = getSessionCache();
+        if (cache != null) {
+            final T session = cache.get(sessionValue);
+            if (session != null) return session;
+        }
+
+        final T session;
+        try {
+            final byte[] signature = decodeBase64Url(sessionValue.substring(signatureDot + 1));
+            if (!getSessionMac().verify(sessionValue.getBytes(US_ASCII), 0, signatureDot, signature))
+                throw new Forbidden("Invalid session");
+            session = sessionFromJson(new String(decodeBase64Url(sessionValue.substring(0, sessionEnd)), UTF_8));
+        } catch (final IllegalArgumentException e) {
             throw new Forbidden("Invalid session");
-        return sessionFromJson(new String(decodeBase64Url(encodedSession[0]), UTF_8));
-    }
+        }
 
-    private static boolean isValidSession(final String[] encodedSession, final byte[] key) {
-        return encodedSession != null && encodedSession.length == 2
-            && encodedSession[1].equals(toVerification(key, encodedSession[0]));
-    }
-    private static String toVerification(final byte[] key, final String data) {
-        return encodeBase64Url(hmacSha256(data.getBytes(UTF_8), key));
+        if (cache != null && session != null) cache.put(sessionValue, session);
+        return session;
     }
 
 }
@@ -0,0 +1,105 @@
+package httpserver.util;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+
+// A concurrent cache bounded by the total weight of its values. Reads don't lock, they only mark
+// the entry as used. Writes take a lock and evict with the CLOCK algorithm: the hand walks over
+// the entries, clears the mark of used entries and removes the first one that wasn't used since
+// the hand last passed. This approximates LRU with a constant cost per eviction.
+public final class BoundedCache<K, V> {
+
+    private static final class Node<V> {
+        private final V value;
+        private final long weight;
+        private volatile boolean used = true;
+
+        private Node(final V value, final long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private final Map<K, Node<V>> entries = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private Iterator<Map.Entry<K, Node<V>>> hand;
+    private long weight;
+
+    public BoundedCache(final long maxWeight, final ToLongFunction<V> weigher) {
+        if (maxWeight < 0) throw new IllegalArgumentException("Max weight must be a positive number");
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    public V get(final K key) {
+        final var node = entries.get(key);
+        if (node == null) return null;
+        if (!node.used) node.used = true;
+        return node.value;
+    }
+
+    // Values heavier than the cache itself are not stored
+    public void put(final K key, final V value) {
+        final long valueWeight = weigher.applyAsLong(value);
+        lock.lock();
+        try {
+            if (valueWeight > maxWeight) {
+                removeLocked(key);
+                return;
+            }
+            final var previous = entries.put(key, new Node<>(value, valueWeight));
+            weight += valueWeight - (previous == null ? 0 : previous.weight);
+            while (weight > maxWeight) evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void remove(final K key) {
+        lock.lock();
+        try {
+            removeLocked(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long weight() {
+        lock.lock();
+        try {
+            return weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void removeLocked(final K key) {
+        final var removed = entries.remove(key);
+        if (removed != null) weight -= removed.weight;
+    }
+
+    private void evict() {
+        while (true) {
+            if (hand == null || !hand.hasNext()) hand = entries.entrySet().iterator();
+            final var entry = hand.next();
+            final var node = entry.getValue();
+            if (node.used) {
+                node.used = false;
+                continue;
+            }
+            // Only removes the entry when it still holds the node the hand saw
+            if (entries.remove(entry.getKey(), node)) weight -= node.weight;
+            return;
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+package httpserver.util;
+
+public enum Bytes {;
+
+    public static int indexOf(final byte[] data, final int from, final int to, final byte value) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == value) return i;
+        }
+        return -1;
+    }
+
+    public static boolean isWhitespace(final byte value) {
+        return value == ' ' || value == '\t';
+    }
+
+    // Only ASCII letters are folded, which is all that is needed for header names and tokens
+    public static int toLowerCase(final int value) {
+        return value >= 'A' && value <= 'Z' ? value + ('a' - 'A') : value;
+    }
+
+    public static boolean equalsIgnoreCase(final byte[] data, final int offset, final int length, final String value) {
+        if (length != value.length()) return false;
+        for (int i = 0; i < length; i++) {
+            if (toLowerCase(data[offset + i] & 0xFF) != toLowerCase(value.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    // The same value as the hashCode of the lower case String of these bytes
+    public static int hashCodeIgnoreCase(final byte[] data, final int offset, final int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + toLowerCase(data[i] & 0xFF);
+        }
+        return hash;
+    }
+
+    public static boolean equals(final byte[] data, final int offset, final int length, final String value) {
+        if (length != value.length()) return false;
+        for (int i = 0; i < length; i++) {
+            if ((data[offset + i] & 0xFF) != value.charAt(i)) return false;
+        }
+        return true;
+    }
+
+}
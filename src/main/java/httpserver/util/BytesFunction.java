@@ -0,0 +1,5 @@
+package httpserver.util;
+
+public interface BytesFunction<T> {
+    T apply(byte[] data, int offset, int length);
+}
@@ -0,0 +1,156 @@
+package httpserver.util;
+
+import httpserver.error.PayloadTooLarge;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.lang.String.CASE_INSENSITIVE_ORDER;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+// Decodes an HTTP/1.1 chunked body. Reading ends after the last chunk and its trailers, which
+// leaves the underlying stream at the start of the next request. The size of the decoded body
+// and of the lines in the framing are limited, a body that breaks a limit can not be continued.
+public final class ChunkedInputStream extends InputStream {
+
+    private static final int MAX_LINE_LENGTH = 4096, MAX_TRAILERS_LENGTH = 8192;
+
+    private final InputStream in;
+    private final long maxLength;
+    private final byte[] line = new byte[MAX_LINE_LENGTH];
+    private long remaining;
+    private long total;
+    private boolean started;
+    private boolean finished;
+    private IOException failure;
+    private Map<String, String> trailers;
+
+    public ChunkedInputStream(final InputStream in, final long maxLength) {
+        this.in = in;
+        this.maxLength = maxLength;
+    }
+
+    // Trailers are only known once the whole body has been read
+    public String getTrailer(final String name) {
+        return trailers == null ? null : trailers.get(name);
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) return -1;
+        final int value = in.read();
+        if (value == -1) throw fail(new EOFException("Connection closed inside a chunk"));
+        remaining--;
+        return value;
+    }
+
+    @Override
+    public int read(final byte[] data, final int offset, final int length) throws IOException {
+        if (length == 0) return 0;
+        if (!nextChunk()) return -1;
+        final int read = in.read(data, offset, (int) Math.min(length, remaining));
+        if (read == -1) throw fail(new EOFException("Connection closed inside a chunk"));
+        remaining -= read;
+        return read;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        if (n <= 0 || !nextChunk()) return 0;
+        final long skipped = in.skip(Math.min(n, remaining));
+        remaining -= skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (finished || failure != null) return 0;
+        return (int) Math.min(in.available(), remaining);
+    }
+
+    @Override
+    public void close() {
+        // skip, we don't want to close the actual stream
+    }
+
+    // Returns false when the body is complete
+    private boolean nextChunk() throws IOException {
+        if (failure != null) throw failure;
+        if (finished) return false;
+        if (remaining > 0) return true;
+
+        if (started && readLine() != 0) throw fail(new IOException("Missing CRLF after chunk data"));
+        started = true;
+
+        final long size = parseChunkSize(readLine());
+        if (size > maxLength - total) throw fail(new PayloadTooLarge("Request body too large"));
+        if (size == 0) {
+            readTrailers();
+            finished = true;
+            return false;
+        }
+        total += size;
+        remaining = size;
+        return true;
+    }
+
+    // Chunk extensions after the size are ignored
+    private long parseChunkSize(final int length) throws IOException {
+        long size = 0;
+        int i = 0;
+        for (; i < length; i++) {
+            final int digit = Character.digit(line[i], 16);
+            if (digit == -1) break;
+            if (i == 15) throw fail(new IOException("Chunk size too large"));
+            size = (size << 4) | digit;
+        }
+        if (i == 0) throw fail(new IOException("Malformed chunk size"));
+        for (; i < length; i++) {
+            if (line[i] == ';') break;
+            if (!Bytes.isWhitespace(line[i])) throw fail(new IOException("Malformed chunk size"));
+        }
+        return size;
+    }
+
+    private void readTrailers() throws IOException {
+        int trailersLength = 0;
+        int length; while ((length = readLine()) != 0) {
+            trailersLength += length;
+            if (trailersLength > MAX_TRAILERS_LENGTH) throw fail(new IOException("Trailers too large"));
+            final int colon = Bytes.indexOf(line, 0, length, (byte) ':');
+            if (colon == -1) continue;
+            int valueStart = colon + 1;
+            while (valueStart < length && Bytes.isWhitespace(line[valueStart])) valueStart++;
+            int valueEnd = length;
+            while (valueEnd > valueStart && Bytes.isWhitespace(line[valueEnd - 1])) valueEnd--;
+            if (trailers == null) trailers = new TreeMap<>(CASE_INSENSITIVE_ORDER);
+            trailers.put(new String(line, 0, colon, ISO_8859_1).trim(), new String(line, valueStart, valueEnd - valueStart, ISO_8859_1));
+        }
+    }
+
+    // Reads a line into the line buffer and returns its length without the line ending
+    private int readLine() throws IOException {
+        int length = 0;
+        while (true) {
+            final int value = in.read();
+            if (value == -1) throw fail(new EOFException("Connection closed inside chunk framing"));
+            if (value == '\n') break;
+            if (length == line.length) throw fail(new IOException("Chunk framing line too long"));
+            line[length++] = (byte) value;
+        }
+        return length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+    }
+
+    private IOException fail(final IOException e) {
+        this.failure = e;
+        return e;
+    }
+
+}
@@ -0,0 +1,86 @@
+package httpserver.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+// Frames everything written to it as HTTP/1.1 chunks. Small writes are collected until a chunk is
+// full, writes larger than a chunk go out as a single chunk without copying. Closing writes the
+// last chunk but leaves the underlying stream open.
+public final class ChunkedOutputStream extends OutputStream {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(US_ASCII);
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[] LAST_CHUNK = { '0', '\r', '\n', '\r', '\n' };
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private final byte[] chunkHead = new byte[18];
+    private int count;
+    private boolean closed;
+
+    public ChunkedOutputStream(final OutputStream out, final int chunkSize) {
+        if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be positive");
+        this.out = out;
+        this.buffer = new byte[chunkSize];
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        if (count == buffer.length) writeBufferedChunk();
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] data, final int offset, final int length) throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        if (length == 0) return;
+        if (length >= buffer.length) {
+            writeBufferedChunk();
+            writeChunk(data, offset, length);
+            return;
+        }
+        if (length > buffer.length - count) writeBufferedChunk();
+        System.arraycopy(data, offset, buffer, count, length);
+        count += length;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (closed) return;
+        writeBufferedChunk();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        writeBufferedChunk();
+        out.write(LAST_CHUNK);
+        out.flush();
+        closed = true;
+    }
+
+    private void writeBufferedChunk() throws IOException {
+        if (count == 0) return;
+        writeChunk(buffer, 0, count);
+        count = 0;
+    }
+
+    private void writeChunk(final byte[] data, final int offset, final int length) throws IOException {
+        int position = chunkHead.length - 2;
+        chunkHead[position] = '\r';
+        chunkHead[position + 1] = '\n';
+        int value = length;
+        do {
+            chunkHead[--position] = HEX[value & 0xF];
+            value >>>= 4;
+        } while (value != 0);
+        out.write(chunkHead, position, chunkHead.length - position);
+        out.write(data, offset, length);
+        out.write(CRLF);
+    }
+
+}
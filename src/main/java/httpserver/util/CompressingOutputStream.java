@@ -0,0 +1,113 @@
+package httpserver.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static java.util.zip.Deflater.NO_FLUSH;
+import static java.util.zip.Deflater.SYNC_FLUSH;
+
+// Compresses into the underlying stream as data is written, in the gzip or the zlib (deflate)
+// format. For gzip the pool must hold Deflaters created with nowrap, the header and trailer are
+// written here. Closing finishes the compressed data but leaves the underlying stream open.
+//
+// A sync flush ends the current deflate block, so flushing often costs most of the compression.
+// flush() only does one when the stream was created with syncFlush, like for an event stream that
+// has to reach the client as it is written. Otherwise the Deflater keeps collecting until close().
+public final class CompressingOutputStream extends OutputStream {
+
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    private final OutputStream out;
+    private final DeflaterPool pool;
+    private final CRC32 crc;
+    private final byte[] buffer = new byte[4096];
+    private final boolean syncFlush;
+    private Deflater deflater;
+    private boolean started;
+
+    public CompressingOutputStream(final OutputStream out, final DeflaterPool pool, final boolean gzip) {
+        this(out, pool, gzip, false);
+    }
+    public CompressingOutputStream(final OutputStream out, final DeflaterPool pool, final boolean gzip, final boolean syncFlush) {
+        this.out = out;
+        this.pool = pool;
+        this.crc = gzip ? new CRC32() : null;
+        this.syncFlush = syncFlush;
+        this.deflater = pool.borrow();
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] data, final int offset, final int length) throws IOException {
+        if (deflater == null) throw new IOException("Stream closed");
+        if (length == 0) return;
+        writeHeader();
+        if (crc != null) crc.update(data, offset, length);
+        deflater.setInput(data, offset, length);
+        while (!deflater.needsInput()) deflate(NO_FLUSH);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (syncFlush) syncFlush();
+    }
+
+    // Everything written so far can be decompressed by the client after a sync flush
+    public void syncFlush() throws IOException {
+        if (deflater == null) return;
+        writeHeader();
+        int length; do {
+            length = deflate(SYNC_FLUSH);
+        } while (length == buffer.length);
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (deflater == null) return;
+        try {
+            writeHeader();
+            deflater.finish();
+            while (!deflater.finished()) deflate(NO_FLUSH);
+            if (crc != null) {
+                writeIntLE((int) crc.getValue());
+                writeIntLE((int) deflater.getBytesRead());
+            }
+        } finally {
+            release();
+        }
+    }
+
+    // Gives the Deflater back without finishing, for when writing the body failed
+    public void release() {
+        if (deflater == null) return;
+        pool.release(deflater);
+        deflater = null;
+    }
+
+    private void writeHeader() throws IOException {
+        if (started) return;
+        started = true;
+        if (crc != null) out.write(GZIP_HEADER);
+    }
+
+    private int deflate(final int flush) throws IOException {
+        final int length = deflater.deflate(buffer, 0, buffer.length, flush);
+        if (length > 0) out.write(buffer, 0, length);
+        return length;
+    }
+
+    private void writeIntLE(final int value) throws IOException {
+        out.write(value & 0xFF);
+        out.write((value >> 8) & 0xFF);
+        out.write((value >> 16) & 0xFF);
+        out.write((value >> 24) & 0xFF);
+    }
+
+}
@@ -0,0 +1,30 @@
+package httpserver.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.Deflater;
+
+// Keeps a bounded number of idle Deflaters, each holds native zlib state that is expensive to
+// set up. A thread local would not help, virtual threads are not reused.
+public final class DeflaterPool {
+
+    private final ArrayBlockingQueue<Deflater> idle;
+    private final int level;
+    private final boolean nowrap;
+
+    public DeflaterPool(final int size, final int level, final boolean nowrap) {
+        this.idle = new ArrayBlockingQueue<>(size);
+        this.level = level;
+        this.nowrap = nowrap;
+    }
+
+    public Deflater borrow() {
+        final var deflater = idle.poll();
+        return deflater != null ? deflater : new Deflater(level, nowrap);
+    }
+
+    public void release(final Deflater deflater) {
+        deflater.reset();
+        if (!idle.offer(deflater)) deflater.end();
+    }
+
+}
@@ -35,25 +35,8 @@ public enum Encoding {;
         }
     }
 
-    // For HMAC see RFC 2104.
-    // SHA-256 uses a block length of 64. The Java MessageDigest class has no way to get the block length from an
-    // instance. So it is not possible to write a generic HMAC implementation at this time.
     public static byte[] hmacSha256(final byte[] data, final byte[] key) {
-        final var digest = newSha256();
-        final var blockLength = 64;
-
-        final var opad = new byte[blockLength];
-        final var ipad = new byte[blockLength];
-        for (int i = 0; i < blockLength; i++) {
-            final int k = i < key.length ? key[i] : 0;
-            opad[i] = (byte)(k ^ 0x5c);
-            ipad[i] = (byte)(k ^ 0x36);
-        }
-
-        digest.update(ipad);
-        final byte[] inner = digest.digest(data);
-        digest.update(opad);
-        return digest.digest(inner);
+        return new HmacSha256(key).sign(data);
     }
 
     public static String encodeHex(final byte[] bytes) {
@@ -66,6 +49,35 @@ public enum Encoding {;
     public static String decodeUrl(final String value) {
         return value != null ? URLDecoder.decode(value, UTF_8) : EMPTY;
     }
+    // Decodes form url encoding straight from the bytes, only copying when there is a % or +
+    public static String decodeUrl(final byte[] data, final int offset, final int length) {
+        int i = offset;
+        final int end = offset + length;
+        while (i < end && data[i] != '%' && data[i] != '+') i++;
+        if (i == end) return new String(data, offset, length, UTF_8);
+
+        final byte[] decoded = new byte[length];
+        int count = i - offset;
+        System.arraycopy(data, offset, decoded, 0, count);
+        for (; i < end; i++) {
+            final byte b = data[i];
+            if (b == '+') decoded[count++] = ' ';
+            else if (b != '%') decoded[count++] = b;
+            else {
+                final int high = i + 2 < end ? Character.digit(data[i + 1], 16) : -1;
+                final int low = high == -1 ? -1 : Character.digit(data[i + 2], 16);
+                if (low == -1) throw new IllegalArgumentException("Invalid escape in url encoded value");
+                decoded[count++] = (byte) (high << 4 | low);
+                i += 2;
+            }
+        }
+        return new String(decoded, 0, count, UTF_8);
+    }
+    // A + in a path is not a space
+    public static String decodePath(final String value) {
+        if (value.indexOf('%') == -1) return value;
+        return URLDecoder.decode(value.replace("+", "%2B"), UTF_8);
+    }
 
     public static String encodeBase64Url(final byte[] value) {
         return Base64.getUrlEncoder().encodeToString(value);
@@ -0,0 +1,57 @@
+package httpserver.util;
+
+import java.security.MessageDigest;
+
+import static httpserver.util.Encoding.newSha256;
+
+// HMAC-SHA256, see RFC 2104. The key pads are hashed once when the instance is created, signing
+// continues from a copy of those digests. An instance can be shared between threads, keep it with
+// whatever owns the key.
+public final class HmacSha256 {
+
+    private static final int BLOCK_LENGTH = 64;
+
+    private final MessageDigest inner;
+    private final MessageDigest outer;
+
+    public HmacSha256(final byte[] key) {
+        final byte[] blockKey = key.length > BLOCK_LENGTH ? newSha256().digest(key) : key;
+        final var ipad = new byte[BLOCK_LENGTH];
+        final var opad = new byte[BLOCK_LENGTH];
+        for (int i = 0; i < BLOCK_LENGTH; i++) {
+            final int k = i < blockKey.length ? blockKey[i] : 0;
+            ipad[i] = (byte) (k ^ 0x36);
+            opad[i] = (byte) (k ^ 0x5c);
+        }
+        this.inner = newSha256();
+        this.inner.update(ipad);
+        this.outer = newSha256();
+        this.outer.update(opad);
+    }
+
+    public byte[] sign(final byte[] data) {
+        return sign(data, 0, data.length);
+    }
+    public byte[] sign(final byte[] data, final int offset, final int length) {
+        final var innerDigest = copy(inner);
+        innerDigest.update(data, offset, length);
+        final var outerDigest = copy(outer);
+        outerDigest.update(innerDigest.digest());
+        return outerDigest.digest();
+    }
+
+    // Compares in constant time, so the time taken does not reveal how much of a signature is right
+    public boolean verify(final byte[] data, final int offset, final int length, final byte[] signature) {
+        return MessageDigest.isEqual(sign(data, offset, length), signature);
+    }
+
+    private static MessageDigest copy(final MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (final CloneNotSupportedException e) {
+            // impossible, the SHA-256 digest of the JDK can be cloned
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+package httpserver.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Function;
+
+// A radix tree of routes. Static text is stored in nodes that share their common prefixes, a
+// {name} segment matches one non-empty path segment and a * at the end of a route matches the rest
+// of the path. Finding a route costs one walk down the path, no matter how many routes there are.
+// Static text is tried before a parameter, and a parameter before a wildcard.
+public final class PathTree<V> {
+
+    public static final String WILDCARD = "*";
+
+    private static final class Node<V> {
+        private String prefix;
+        private char[] indices = new char[0];
+        private Node<V>[] children = newNodes(0);
+        private Node<V> parameter;
+        private Node<V> wildcard;
+        private V value;
+        private String[] names;
+
+        private Node(final String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    private final Node<V> root = new Node<>("");
+    private int maxParameters;
+
+    // Returns the value stored for the route, or stores the value created from the names of the
+    // parameters in the route
+    public V computeIfAbsent(final String route, final Function<String[], V> create) {
+        final var names = new ArrayList<String>();
+        Node<V> node = root;
+        int offset = 0;
+        while (offset < route.length()) {
+            final char c = route.charAt(offset);
+            if (c == '{') {
+                final int close = route.indexOf('}', offset);
+                if (offset == 0 || route.charAt(offset - 1) != '/' || close == -1 || close == offset + 1
+                        || (close + 1 < route.length() && route.charAt(close + 1) != '/'))
+                    throw new IllegalArgumentException("A parameter must be a whole path segment in route " + route);
+                names.add(route.substring(offset + 1, close));
+                if (node.parameter == null) node.parameter = new Node<>("");
+                node = node.parameter;
+                offset = close + 1;
+            } else if (c == '*') {
+                if (offset != route.length() - 1 || (offset > 0 && route.charAt(offset - 1) == '}'))
+                    throw new IllegalArgumentException("A wildcard must end the route " + route);
+                names.add(WILDCARD);
+                if (node.wildcard == null) node.wildcard = new Node<>("");
+                node = node.wildcard;
+                offset++;
+            } else {
+                int end = offset;
+                while (end < route.length() && route.charAt(end) != '{' && route.charAt(end) != '*') end++;
+                node = insertStatic(node, route.substring(offset, end));
+                offset = end;
+            }
+        }
+
+        final String[] parameterNames = names.toArray(new String[0]);
+        if (node.value != null) {
+            if (!Arrays.equals(node.names, parameterNames))
+                throw new IllegalArgumentException("Route " + route + " names its parameters differently than an earlier route");
+            return node.value;
+        }
+        node.names = parameterNames;
+        node.value = create.apply(parameterNames);
+        maxParameters = Math.max(maxParameters, parameterNames.length);
+        return node.value;
+    }
+
+    private static <V> Node<V> insertStatic(Node<V> parent, String text) {
+        while (true) {
+            final int index = indexOf(parent.indices, text.charAt(0));
+            if (index == -1) {
+                final var child = new Node<V>(text);
+                final int length = parent.indices.length;
+                parent.indices = Arrays.copyOf(parent.indices, length + 1);
+                parent.indices[length] = text.charAt(0);
+                parent.children = Arrays.copyOf(parent.children, length + 1);
+                parent.children[length] = child;
+                return child;
+            }
+
+            final var child = parent.children[index];
+            final int common = commonPrefixLength(child.prefix, text);
+            if (common < child.prefix.length()) split(child, common);
+            if (common == text.length()) return child;
+            text = text.substring(common);
+            parent = child;
+        }
+    }
+
+    // Moves everything below the first length characters of the node into a new child
+    private static <V> void split(final Node<V> node, final int length) {
+        final var rest = new Node<V>(node.prefix.substring(length));
+        rest.indices = node.indices;
+        rest.children = node.children;
+        rest.parameter = node.parameter;
+        rest.wildcard = node.wildcard;
+        rest.value = node.value;
+        rest.names = node.names;
+
+        node.prefix = node.prefix.substring(0, length);
+        node.indices = new char[] { rest.prefix.charAt(0) };
+        node.children = newNodes(1);
+        node.children[0] = rest;
+        node.parameter = null;
+        node.wildcard = null;
+        node.value = null;
+        node.names = null;
+    }
+
+    // The largest number of parameters in a route, the capture array passed to find needs room
+    // for twice as many offsets
+    public int maxParameters() {
+        return maxParameters;
+    }
+
+    // Returns the value of the route that matches the path, or null. The start and end offset of
+    // each parameter in the path are written to captures, in the order of the route's names.
+    public V find(final String path, final int[] captures) {
+        return find(path, captures, 0);
+    }
+    // Same, but the offsets are written after those of the first parameters that are in captures
+    // already
+    public V find(final String path, final int[] captures, final int first) {
+        final var node = find(root, path, 0, captures, first);
+        return node == null ? null : node.value;
+    }
+
+    private static <V> Node<V> find(final Node<V> node, final String path, int offset, final int[] captures, final int count) {
+        if (!path.startsWith(node.prefix, offset)) return null;
+        offset += node.prefix.length();
+
+        if (offset == path.length()) {
+            if (node.value != null) return node;
+            return matchWildcard(node, path, offset, captures, count);
+        }
+
+        final int index = indexOf(node.indices, path.charAt(offset));
+        if (index != -1) {
+            final var found = find(node.children[index], path, offset, captures, count);
+            if (found != null) return found;
+        }
+
+        if (node.parameter != null) {
+            int end = offset;
+            while (end < path.length() && path.charAt(end) != '/') end++;
+            if (end > offset) {
+                captures[count * 2] = offset;
+                captures[count * 2 + 1] = end;
+                final var found = find(node.parameter, path, end, captures, count + 1);
+                if (found != null) return found;
+            }
+        }
+
+        return matchWildcard(node, path, offset, captures, count);
+    }
+
+    private static <V> Node<V> matchWildcard(final Node<V> node, final String path, final int offset,
+                                             final int[] captures, final int count) {
+        if (node.wildcard == null || node.wildcard.value == null) return null;
+        captures[count * 2] = offset;
+        captures[count * 2 + 1] = path.length();
+        return node.wildcard;
+    }
+
+    private static int indexOf(final char[] indices, final char c) {
+        for (int i = 0; i < indices.length; i++) {
+            if (indices[i] == c) return i;
+        }
+        return -1;
+    }
+
+    private static int commonPrefixLength(final String a, final String b) {
+        final int max = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < max && a.charAt(i) == b.charAt(i)) i++;
+        return i;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Node<V>[] newNodes(final int length) {
+        return (Node<V>[]) new Node[length];
+    }
+
+}
@@ -12,8 +12,10 @@ public enum Strings {;
         HTTP_09 = "HTTP/0.9",
         HTTP_10 = "HTTP/1.0",
         HTTP_11 = "HTTP/1.1",
+        GET = "GET",
         HEAD = "HEAD",
         KEEP_ALIVE = "keep-alive",
-        CLOSE = "close";
+        CLOSE = "close",
+        CHUNKED = "chunked";
 
 }
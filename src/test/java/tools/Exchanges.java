@@ -0,0 +1,21 @@
+package tools;
+
+import httpserver.core.HttpServerExchange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// Exchanges for a parsed request head, without a connection behind them
+public enum Exchanges {;
+
+    // The headers are complete lines, each ending in CRLF. Host is localhost unless they have one.
+    public static HttpServerExchange newExchange(final String method, final String uri, final String headers) throws IOException {
+        final String host = ("\r\n" + headers).toLowerCase().contains("\r\nhost:") ? "" : "Host: localhost\r\n";
+        final byte[] head = (method + " " + uri + " HTTP/1.1\r\n" + host + headers + "\r\n").getBytes(UTF_8);
+        return new HttpServerExchange(null, head, head.length, InputStream.nullInputStream(), new ByteArrayOutputStream());
+    }
+
+}
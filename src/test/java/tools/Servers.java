@@ -0,0 +1,96 @@
+package tools;
+
+import httpserver.HttpHandler;
+import httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static httpserver.HttpServer.newHttpServer;
+import static java.lang.String.CASE_INSENSITIVE_ORDER;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// Servers on a free port of the loopback address, and a client that reads their responses
+public enum Servers {;
+
+    public static final int TIMEOUT = 5000;
+
+    public static HttpServer startServer(final boolean nonBlocking, final HttpHandler handler) throws IOException {
+        return newHttpServer().bind(0, "127.0.0.1").daemon(true).nonBlocking(nonBlocking).handler(handler).build().start();
+    }
+
+    public static Socket connect(final HttpServer server) throws IOException {
+        final var socket = new Socket("127.0.0.1", server.getPort());
+        socket.setSoTimeout(TIMEOUT);
+        return socket;
+    }
+
+    public static void send(final Socket socket, final String requests) throws IOException {
+        socket.getOutputStream().write(requests.getBytes(ISO_8859_1));
+        socket.getOutputStream().flush();
+    }
+
+    public record Response(String statusLine, Map<String, String> headers, byte[] body) {
+        public int status() {
+            return Integer.parseInt(statusLine.split(" ")[1]);
+        }
+        public String header(final String name) {
+            return headers.get(name);
+        }
+        public String text() {
+            return new String(body, UTF_8);
+        }
+    }
+
+    // The body is framed by Content-Length, by chunks, or by the end of the connection. A response
+    // to a HEAD request never has a body.
+    public static Response readResponse(final InputStream in, final boolean head) throws IOException {
+        final String statusLine = readLine(in);
+        final Map<String, String> headers = new TreeMap<>(CASE_INSENSITIVE_ORDER);
+        String line; while (!(line = readLine(in)).isEmpty()) {
+            final int colon = line.indexOf(':');
+            headers.put(line.substring(0, colon), line.substring(colon + 1).trim());
+        }
+
+        final var body = new ByteArrayOutputStream();
+        final int status = Integer.parseInt(statusLine.split(" ")[1]);
+        if (head || status == 204 || status == 304) return new Response(statusLine, headers, body.toByteArray());
+        if ("chunked".equalsIgnoreCase(headers.get("Transfer-Encoding"))) {
+            int size; while ((size = Integer.parseInt(readLine(in).trim(), 16)) != 0) {
+                body.write(readFully(in, size));
+                readLine(in);
+            }
+            while (!readLine(in).isEmpty());
+        } else if (headers.containsKey("Content-Length")) {
+            body.write(readFully(in, Integer.parseInt(headers.get("Content-Length"))));
+        } else {
+            in.transferTo(body);
+        }
+        return new Response(statusLine, headers, body.toByteArray());
+    }
+    public static Response readResponse(final InputStream in) throws IOException {
+        return readResponse(in, false);
+    }
+
+    private static byte[] readFully(final InputStream in, final int length) throws IOException {
+        final byte[] data = in.readNBytes(length);
+        if (data.length != length) throw new EOFException("Response body ended after " + data.length + " of " + length + " bytes");
+        return data;
+    }
+
+    private static String readLine(final InputStream in) throws IOException {
+        final var line = new ByteArrayOutputStream();
+        int b; while ((b = in.read()) != '\n') {
+            if (b == -1) throw new EOFException("Connection closed inside a response");
+            if (b != '\r') line.write(b);
+        }
+        return line.toString(ISO_8859_1);
+    }
+
+}
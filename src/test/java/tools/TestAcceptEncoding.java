@@ -0,0 +1,24 @@
+package tools;
+
+import org.junit.Test;
+
+import static httpserver.handlers.Compression.qualityOf;
+import static org.junit.Assert.assertEquals;
+
+public class TestAcceptEncoding {
+
+    @Test
+    public void listedEncodings() {
+        assertEquals("Invalid default quality", 1.0, qualityOf("gzip, deflate", "deflate"), 0);
+        assertEquals("Invalid quality", 0.5, qualityOf("deflate;q=0.5, gzip;q=0.8", "deflate"), 0);
+        assertEquals("Case of the name matters", 0.8, qualityOf("GZIP; Q=0.8", "gzip"), 0);
+        assertEquals("Unlisted encoding accepted", 0.0, qualityOf("br", "gzip"), 0);
+    }
+
+    @Test
+    public void wildcardCoversTheRest() {
+        assertEquals("Wildcard not applied", 0.3, qualityOf("br, *;q=0.3", "gzip"), 0);
+        assertEquals("Wildcard overrides a listed encoding", 0.0, qualityOf("gzip;q=0, *", "gzip"), 0);
+    }
+
+}
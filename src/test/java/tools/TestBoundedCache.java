@@ -0,0 +1,51 @@
+package tools;
+
+import httpserver.util.BoundedCache;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestBoundedCache {
+
+    @Test
+    public void weightIsBounded() {
+        final var cache = new BoundedCache<String, String>(10, String::length);
+        cache.put("a", "12345");
+        cache.put("b", "12345");
+        cache.put("c", "123");
+
+        assertTrue("Cache too heavy", cache.weight() <= 10);
+        assertEquals("Newest entry evicted", "123", cache.get("c"));
+    }
+
+    @Test
+    public void usedEntriesSurvive() {
+        final var cache = new BoundedCache<String, String>(3, String::length);
+        cache.put("a", "1");
+        cache.put("b", "1");
+        cache.put("c", "1");
+        cache.put("d", "1");
+        cache.get("c");
+        cache.put("e", "1");
+
+        assertEquals("Used entry evicted", "1", cache.get("c"));
+        assertEquals("Invalid size", 3, cache.size());
+    }
+
+    @Test
+    public void replacingUpdatesWeight() {
+        final var cache = new BoundedCache<String, String>(10, String::length);
+        cache.put("a", "123456");
+        cache.put("a", "12");
+        cache.put("b", "12345678");
+
+        assertEquals("Invalid weight", 10, cache.weight());
+        assertNull("Value heavier than the cache stored", putAndGet(cache, "c", "12345678901"));
+    }
+
+    private static String putAndGet(final BoundedCache<String, String> cache, final String key, final String value) {
+        cache.put(key, value);
+        return cache.get(key);
+    }
+
+}
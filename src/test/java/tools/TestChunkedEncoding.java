@@ -0,0 +1,84 @@
+package tools;
+
+import httpserver.error.PayloadTooLarge;
+import httpserver.util.ChunkedInputStream;
+import httpserver.util.ChunkedOutputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class TestChunkedEncoding {
+
+    @Test
+    public void smallWritesAreCollected() throws IOException {
+        final var bytes = new ByteArrayOutputStream();
+        final var out = new ChunkedOutputStream(bytes, 16);
+        out.write("hello ".getBytes(US_ASCII));
+        out.write("world".getBytes(US_ASCII));
+        out.close();
+
+        assertEquals("Invalid chunked output", "b\r\nhello world\r\n0\r\n\r\n", bytes.toString(US_ASCII));
+    }
+
+    @Test
+    public void largeWritesAreSingleChunks() throws IOException {
+        final var bytes = new ByteArrayOutputStream();
+        final var out = new ChunkedOutputStream(bytes, 4);
+        out.write('a');
+        out.write("bcdefghijklmnopqrstu".getBytes(US_ASCII));
+        out.close();
+
+        assertEquals("Invalid chunked output", "1\r\na\r\n14\r\nbcdefghijklmnopqrstu\r\n0\r\n\r\n", bytes.toString(US_ASCII));
+    }
+
+    @Test
+    public void flushEndsTheChunk() throws IOException {
+        final var bytes = new ByteArrayOutputStream();
+        final var out = new ChunkedOutputStream(bytes, 16);
+        out.write("ab".getBytes(US_ASCII));
+        out.flush();
+        out.flush();
+        out.write("c".getBytes(US_ASCII));
+        out.close();
+
+        assertEquals("Invalid chunked output", "2\r\nab\r\n1\r\nc\r\n0\r\n\r\n", bytes.toString(US_ASCII));
+    }
+
+    @Test
+    public void chunkedBodyIsDecoded() throws IOException {
+        final var in = new ByteArrayInputStream("5;name=value\r\nhello\r\n6\r\n world\r\n0\r\nX-Checksum: 42\r\n\r\nGET".getBytes(US_ASCII));
+        final var body = new ChunkedInputStream(in, Long.MAX_VALUE);
+
+        assertEquals("Invalid body", "hello world", new String(body.readAllBytes(), US_ASCII));
+        assertEquals("Invalid trailer", "42", body.getTrailer("x-checksum"));
+        assertEquals("Read past the body", "GET", new String(in.readAllBytes(), US_ASCII));
+    }
+
+    @Test
+    public void chunkedBodyIsLimited() {
+        final var in = new ByteArrayInputStream("5\r\nhello\r\n6\r\n world\r\n0\r\n\r\n".getBytes(US_ASCII));
+        final var body = new ChunkedInputStream(in, 10);
+
+        assertThrows("Body larger than the limit", PayloadTooLarge.class, body::readAllBytes);
+    }
+
+    @Test
+    public void encodedBodyDecodes() throws IOException {
+        final var bytes = new ByteArrayOutputStream();
+        final var out = new ChunkedOutputStream(bytes, 7);
+        for (int i = 0; i < 100; i++) out.write(("line " + i + "\n").getBytes(US_ASCII));
+        out.close();
+
+        final var body = new ChunkedInputStream(new ByteArrayInputStream(bytes.toByteArray()), Long.MAX_VALUE);
+        final String decoded = new String(body.readAllBytes(), US_ASCII);
+        assertEquals("Invalid round trip", "line 99\n", decoded.substring(decoded.length() - 8));
+        assertEquals("Invalid round trip length", 790, decoded.length());
+    }
+
+}
@@ -0,0 +1,185 @@
+package tools;
+
+import httpserver.util.CompressingOutputStream;
+import httpserver.util.DeflaterPool;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static httpserver.core.Headers.CONTENT_TYPE;
+import static httpserver.handlers.Compression.compress;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.zip.Deflater.DEFAULT_COMPRESSION;
+import static org.junit.Assert.*;
+import static tools.Exchanges.newExchange;
+
+public class TestCompressingOutputStream {
+
+    private static final DeflaterPool
+        GZIP = new DeflaterPool(2, DEFAULT_COMPRESSION, true),
+        DEFLATE = new DeflaterPool(2, DEFAULT_COMPRESSION, false);
+
+    @Test
+    public void testGzipRoundTrip() throws IOException {
+        final byte[] data = newData();
+        final var out = new ByteArrayOutputStream();
+        try (final var compressed = new CompressingOutputStream(out, GZIP, true)) {
+            compressed.write(data, 0, 1000);
+            compressed.write(data[1000]);
+            compressed.write(data, 1001, data.length - 1001);
+        }
+        try (final var in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertArrayEquals("Invalid gzip round trip", data, in.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testDeflateRoundTrip() throws IOException {
+        final byte[] data = newData();
+        final var out = new ByteArrayOutputStream();
+        try (final var compressed = new CompressingOutputStream(out, DEFLATE, false)) {
+            compressed.write(data);
+        }
+        try (final var in = new InflaterInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertArrayEquals("Invalid deflate round trip", data, in.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testEmptyGzipBody() throws IOException {
+        final var out = new ByteArrayOutputStream();
+        new CompressingOutputStream(out, GZIP, true).close();
+        try (final var in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals("Invalid empty body", 0, in.readAllBytes().length);
+        }
+    }
+
+    @Test
+    public void testFlushMakesWrittenDataReadable() throws IOException {
+        final var out = new ByteArrayOutputStream();
+        final var compressed = new CompressingOutputStream(out, GZIP, true, true);
+        compressed.write("first event".getBytes());
+        compressed.flush();
+        try (final var in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals("Flushed data not readable", "first event", new String(in.readNBytes(11)));
+        }
+        compressed.close();
+    }
+
+    @Test
+    public void testExplicitSyncFlush() throws IOException {
+        final var out = new ByteArrayOutputStream();
+        final var compressed = new CompressingOutputStream(out, DEFLATE, false);
+        compressed.write("first event".getBytes());
+        compressed.syncFlush();
+        try (final var in = new InflaterInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals("Synced data not readable", "first event", new String(in.readNBytes(11)));
+        }
+        compressed.close();
+    }
+
+    @Test
+    public void testFlushWithoutSyncFlushKeepsCompressing() throws IOException {
+        final byte[] data = newData();
+        final var flushed = new ByteArrayOutputStream();
+        final var unflushed = new ByteArrayOutputStream();
+        try (final var compressed = new CompressingOutputStream(flushed, GZIP, true);
+             final var reference = new CompressingOutputStream(unflushed, GZIP, true)) {
+            for (int offset = 0; offset < data.length; offset += 100) {
+                compressed.write(data, offset, 100);
+                compressed.flush();
+                reference.write(data, offset, 100);
+            }
+        }
+        assertArrayEquals("Flush changed the compressed data", unflushed.toByteArray(), flushed.toByteArray());
+    }
+
+    @Test
+    public void testOnlyEventStreamsAreFlushedThroughCompression() throws Exception {
+        assertEquals("Event stream not flushed", "data: 1\n\n", readableAfterFirstFlush("text/event-stream"));
+        assertEquals("Text flushed", "", readableAfterFirstFlush("text/plain"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testWriteAfterClose() throws IOException {
+        final var compressed = new CompressingOutputStream(new ByteArrayOutputStream(), GZIP, true);
+        compressed.close();
+        compressed.write(1);
+    }
+
+    @Test
+    public void testPoolReusesReleasedDeflaters() {
+        final var pool = new DeflaterPool(1, DEFAULT_COMPRESSION, true);
+        final var first = pool.borrow();
+        final var second = pool.borrow();
+        assertNotSame("Borrowed the same Deflater twice", first, second);
+        pool.release(first);
+        pool.release(second);
+        assertSame("Released Deflater not reused", first, pool.borrow());
+        assertNotSame("Pool kept more than its size", second, pool.borrow());
+    }
+
+    // What a client can decompress of a compressed streamed response, once its handler flushed
+    private static String readableAfterFirstFlush(final String contentType) throws Exception {
+        final var flushed = new CountDownLatch(1);
+        final var release = new CountDownLatch(1);
+        final var exchange = newExchange("GET", "/", "Accept-Encoding: deflate\r\n");
+        compress(handler -> {
+            handler.setResponseHeader(CONTENT_TYPE, contentType);
+            handler.stream(out -> {
+                out.write("data: 1\n\n".getBytes(UTF_8));
+                out.flush();
+                flushed.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                out.write("data: 2\n\n".getBytes(UTF_8));
+            });
+        }).handleRequest(exchange);
+
+        final var out = new ByteArrayOutputStream();
+        final var writer = Thread.ofVirtual().start(() -> {
+            try {
+                exchange.getResponseBody().writeTo(out);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        assertTrue("Handler didn't flush", flushed.await(5, SECONDS));
+        final byte[] afterFlush = out.toByteArray();
+        release.countDown();
+        writer.join();
+        try (final var in = new InflaterInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals("Invalid complete body", "data: 1\n\ndata: 2\n\n", new String(in.readAllBytes(), UTF_8));
+        }
+
+        final var inflater = new Inflater();
+        try {
+            inflater.setInput(afterFlush);
+            final byte[] readable = new byte[100];
+            return new String(readable, 0, inflater.inflate(readable), UTF_8);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] newData() {
+        final var random = new Random(42);
+        final byte[] data = new byte[100_000];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) ('a' + random.nextInt(4));
+        return data;
+    }
+
+}
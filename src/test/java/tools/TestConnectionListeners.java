@@ -0,0 +1,191 @@
+package tools;
+
+import httpserver.HttpHandler;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static httpserver.HttpServer.newHttpServer;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.Assert.*;
+import static tools.Servers.*;
+
+public class TestConnectionListeners {
+
+    private static final boolean[] MODES = { false, true };
+
+    private static final HttpHandler ECHO = exchange -> {
+        final byte[] body = exchange.getInputStream().readAllBytes();
+        exchange.send(exchange.getRequestURI() + " " + new String(body, ISO_8859_1), ISO_8859_1);
+    };
+
+    @Test
+    public void testPipelinedRequests() throws IOException {
+        for (final boolean nonBlocking : MODES) {
+            final var server = startServer(nonBlocking, ECHO);
+            try (final var socket = connect(server)) {
+                send(socket, "GET /1 HTTP/1.1\r\nHost: x\r\n\r\n"
+                    + "POST /2 HTTP/1.1\r\nHost: x\r\nContent-Length: 4\r\n\r\nbody"
+                    + "POST /3 HTTP/1.1\r\nHost: x\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabc\r\n0\r\n\r\n"
+                    + "GET /4 HTTP/1.1\r\nHost: x\r\n\r\n");
+                final var in = new BufferedInputStream(socket.getInputStream());
+                assertEquals("Invalid first response in mode " + nonBlocking, "/1 ", readResponse(in).text());
+                assertEquals("Invalid second response in mode " + nonBlocking, "/2 body", readResponse(in).text());
+                assertEquals("Invalid third response in mode " + nonBlocking, "/3 abc", readResponse(in).text());
+                assertEquals("Invalid fourth response in mode " + nonBlocking, "/4 ", readResponse(in).text());
+            } finally {
+                server.stop();
+            }
+        }
+    }
+
+    @Test
+    public void testHeadSplitAcrossReads() throws Exception {
+        for (final boolean nonBlocking : MODES) {
+            final var server = startServer(nonBlocking, ECHO);
+            try (final var socket = connect(server)) {
+                socket.setTcpNoDelay(true);
+                // Split inside the request line, inside the CRLFCRLF and inside the body
+                for (final String piece : new String[] { "POST /sp", "lit HTTP/1.1\r\nHost: x\r\nContent-Length: 6\r\n\r",
+                        "\nabc", "defGET /next HTTP/1.1\r\nHost: x\r\n\r\n" }) {
+                    send(socket, piece);
+                    Thread.sleep(50);
+                }
+                final var in = new BufferedInputStream(socket.getInputStream());
+                assertEquals("Invalid split response in mode " + nonBlocking, "/split abcdef", readResponse(in).text());
+                assertEquals("Invalid next response in mode " + nonBlocking, "/next ", readResponse(in).text());
+            } finally {
+                server.stop();
+            }
+        }
+    }
+
+    @Test
+    public void testLargeResponseToSlowReader() throws Exception {
+        final byte[] large = new byte[8 * 1024 * 1024];
+        new Random(1).nextBytes(large);
+        for (final boolean nonBlocking : MODES) {
+            final var server = startServer(nonBlocking, exchange -> {
+                if (exchange.getRequestURI().equals("/large")) exchange.send(large);
+                else exchange.send("small", ISO_8859_1);
+            });
+            try (final var slow = new Socket()) {
+                slow.setReceiveBufferSize(8192);
+                slow.setSoTimeout(TIMEOUT);
+                slow.connect(new InetSocketAddress("127.0.0.1", server.getPort()));
+                send(slow, "GET /large HTTP/1.1\r\nHost: x\r\n\r\nGET /after HTTP/1.1\r\nHost: x\r\n\r\n");
+
+                // The server waits for the slow reader without holding up other connections
+                Thread.sleep(200);
+                try (final var other = connect(server)) {
+                    send(other, "GET /other HTTP/1.1\r\nHost: x\r\n\r\n");
+                    assertEquals("Other connection blocked in mode " + nonBlocking, "small",
+                        readResponse(new BufferedInputStream(other.getInputStream())).text());
+                }
+
+                final var in = new BufferedInputStream(slow.getInputStream());
+                final var response = readResponse(in);
+                assertTrue("Invalid large body in mode " + nonBlocking, Arrays.equals(large, response.body()));
+                assertEquals("Invalid response after the large one in mode " + nonBlocking, "small", readResponse(in).text());
+            } finally {
+                server.stop();
+            }
+        }
+    }
+
+    @Test
+    public void testPeerClosingMidBody() throws Exception {
+        for (final boolean nonBlocking : MODES) {
+            final var received = new ArrayBlockingQueue<Integer>(1);
+            final var server = startServer(nonBlocking, exchange -> {
+                received.add(exchange.getInputStream().readAllBytes().length);
+                exchange.send("done", ISO_8859_1);
+            });
+            try {
+                try (final var socket = connect(server)) {
+                    send(socket, "POST /upload HTTP/1.1\r\nHost: x\r\nContent-Length: 100000\r\n\r\n0123456789");
+                }
+                assertEquals("Handler not done with the cut off body in mode " + nonBlocking,
+                    Integer.valueOf(10), received.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+
+                try (final var socket = connect(server)) {
+                    send(socket, "POST /next HTTP/1.1\r\nHost: x\r\nContent-Length: 2\r\n\r\nok");
+                    assertEquals("Server not serving after a cut off body in mode " + nonBlocking, "done",
+                        readResponse(new BufferedInputStream(socket.getInputStream())).text());
+                }
+            } finally {
+                server.stop();
+            }
+        }
+    }
+
+    @Test
+    public void testHalfClosedPeer() throws IOException {
+        for (final boolean nonBlocking : MODES) {
+            final var server = startServer(nonBlocking, ECHO);
+            try (final var socket = connect(server)) {
+                send(socket, "POST /half HTTP/1.1\r\nHost: x\r\nContent-Length: 3\r\n\r\nabc");
+                socket.shutdownOutput();
+                final var in = new BufferedInputStream(socket.getInputStream());
+                assertEquals("Invalid response to a half closed peer in mode " + nonBlocking, "/half abc", readResponse(in).text());
+                assertEquals("Connection not closed in mode " + nonBlocking, -1, in.read());
+            } finally {
+                server.stop();
+            }
+        }
+    }
+
+    @Test
+    public void testNonBlockingServesIdleConnectionsWithOneThread() throws IOException {
+        final var executor = Executors.newSingleThreadExecutor(runnable -> {
+            final var thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        final var server = newHttpServer().bind(0, "127.0.0.1").daemon(true).nonBlocking(true)
+            .executor(executor).handler(ECHO).build().start();
+        try (final var first = connect(server); final var second = connect(server)) {
+            send(first, "GET /first HTTP/1.1\r\nHost: x\r\n\r\n");
+            assertEquals("Invalid first response", "/first ", readResponse(new BufferedInputStream(first.getInputStream())).text());
+            // The first connection is still open, but idle
+            send(second, "GET /second HTTP/1.1\r\nHost: x\r\n\r\n");
+            assertEquals("Idle connection held the only thread", "/second ",
+                readResponse(new BufferedInputStream(second.getInputStream())).text());
+        } finally {
+            server.stop();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRejectedConnectionsAreClosed() throws IOException {
+        for (final boolean nonBlocking : MODES) {
+            final var server = newHttpServer().bind(0, "127.0.0.1").daemon(true).nonBlocking(nonBlocking)
+                .executor(command -> { throw new RejectedExecutionException("Full"); }).handler(ECHO).build().start();
+            try (final var socket = connect(server)) {
+                send(socket, "GET /rejected HTTP/1.1\r\nHost: x\r\n\r\n");
+                try {
+                    assertEquals("Rejected connection left open in mode " + nonBlocking, -1, socket.getInputStream().read());
+                } catch (final SocketTimeoutException e) {
+                    fail("Rejected connection left open in mode " + nonBlocking);
+                } catch (final SocketException e) {
+                    // A reset also means the connection was closed
+                }
+            } finally {
+                server.stop();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,29 @@
+package tools;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static httpserver.session.SessionStore.getValueForCookie;
+import static org.junit.Assert.*;
+import static tools.Exchanges.newExchange;
+
+public class TestCookies {
+
+    @Test
+    public void testCookies() throws IOException {
+        final var exchange = newExchange("GET", "/", "Cookie: theme=dark; session = abc.def ;flag\r\nCookie: lang=en;theme=light;  \r\n");
+        assertEquals("Invalid first cookie", "dark", exchange.getCookie("theme"));
+        assertEquals("Whitespace not trimmed", "abc.def", exchange.getCookie("session"));
+        assertEquals("Second header not read", "en", exchange.getCookie("lang"));
+        assertNull("Cookie without value found", exchange.getCookie("flag"));
+        assertNull("Prefix of a name matched", exchange.getCookie("sess"));
+        assertEquals("Invalid default", "none", getValueForCookie(exchange, "missing", "none"));
+    }
+
+    @Test
+    public void testNoCookies() throws IOException {
+        assertNull("Cookie found without header", newExchange("GET", "/", "").getCookie("session"));
+    }
+
+}
@@ -0,0 +1,133 @@
+package tools;
+
+import httpserver.HttpHandler;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static httpserver.core.Headers.CONTENT_TYPE;
+import static httpserver.core.ResponseBody.newFileBody;
+import static httpserver.core.ResponseBody.newFileChannelBody;
+import static httpserver.handlers.Compression.compress;
+import static java.nio.file.StandardOpenOption.READ;
+import static org.junit.Assert.*;
+import static tools.Servers.*;
+
+public class TestFileBodies {
+
+    private static final boolean[] MODES = { false, true };
+
+    @Test
+    public void testLargeFileToSlowReader() throws Exception {
+        final byte[] data = randomBytes(6 * 1024 * 1024);
+        final Path file = newFile(data);
+        try {
+            for (final boolean nonBlocking : MODES) {
+                final var server = startServer(nonBlocking, exchange -> exchange.send(newFileBody(file)));
+                try (final var socket = new Socket()) {
+                    socket.setReceiveBufferSize(8192);
+                    socket.setSoTimeout(TIMEOUT);
+                    socket.connect(new InetSocketAddress("127.0.0.1", server.getPort()));
+                    send(socket, "GET /file HTTP/1.1\r\nHost: x\r\n\r\nGET /again HTTP/1.1\r\nHost: x\r\n\r\n");
+                    Thread.sleep(200);
+                    final var in = new BufferedInputStream(socket.getInputStream());
+                    assertTrue("Invalid file body in mode " + nonBlocking, Arrays.equals(data, readResponse(in).body()));
+                    assertTrue("Invalid second file body in mode " + nonBlocking, Arrays.equals(data, readResponse(in).body()));
+                } finally {
+                    server.stop();
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testFileChannelRegions() throws IOException {
+        final byte[] data = randomBytes(3 * 1024 * 1024);
+        final Path file = newFile(data);
+        try (final var channel = FileChannel.open(file, READ)) {
+            for (final boolean nonBlocking : MODES) {
+                final var server = startServer(nonBlocking, exchange -> {
+                    // A small region is copied into the write buffer, a large one is transferred
+                    if (exchange.getRequestPath().equals("/small")) exchange.send(newFileChannelBody(channel, 12345, 100));
+                    else exchange.send(newFileChannelBody(channel, 1000, data.length - 2000));
+                });
+                try (final var socket = connect(server)) {
+                    send(socket, "GET /small HTTP/1.1\r\nHost: x\r\n\r\nGET /large HTTP/1.1\r\nHost: x\r\n\r\n");
+                    final var in = new BufferedInputStream(socket.getInputStream());
+                    assertArrayEquals("Invalid small region in mode " + nonBlocking,
+                        Arrays.copyOfRange(data, 12345, 12445), readResponse(in).body());
+                    assertTrue("Invalid large region in mode " + nonBlocking,
+                        Arrays.equals(Arrays.copyOfRange(data, 1000, data.length - 1000), readResponse(in).body()));
+                } finally {
+                    server.stop();
+                }
+                assertTrue("Channel closed by the response", channel.isOpen());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testOutputsThatAreNotChannels() throws IOException {
+        final byte[] data = randomBytes(1024 * 1024);
+        final Path file = newFile(data);
+        try {
+            final var copy = new ByteArrayOutputStream();
+            newFileBody(file, 10, 100_000).writeTo(copy);
+            assertArrayEquals("Invalid plain copy", Arrays.copyOfRange(data, 10, 100_010), copy.toByteArray());
+
+            for (final boolean nonBlocking : MODES) {
+                final HttpHandler handler = exchange -> {
+                    if (exchange.getRequestPath().equals("/chunked")) exchange.stream(out -> newFileBody(file).writeTo(out));
+                    else exchange.send(newFileBody(file));
+                    exchange.setResponseHeader(CONTENT_TYPE, "text/plain");
+                };
+                final var server = startServer(nonBlocking, compress(handler));
+                try (final var socket = connect(server)) {
+                    send(socket, "GET /chunked HTTP/1.1\r\nHost: x\r\n\r\nGET /gzip HTTP/1.1\r\nHost: x\r\nAccept-Encoding: gzip\r\n\r\n");
+                    final var in = new BufferedInputStream(socket.getInputStream());
+
+                    final var chunked = readResponse(in);
+                    assertEquals("Not chunked in mode " + nonBlocking, "chunked", chunked.header("Transfer-Encoding"));
+                    assertTrue("Invalid chunked file in mode " + nonBlocking, Arrays.equals(data, chunked.body()));
+
+                    final var compressed = readResponse(in);
+                    assertEquals("Not compressed in mode " + nonBlocking, "gzip", compressed.header("Content-Encoding"));
+                    final byte[] decompressed = new GZIPInputStream(new ByteArrayInputStream(compressed.body())).readAllBytes();
+                    assertTrue("Invalid compressed file in mode " + nonBlocking, Arrays.equals(data, decompressed));
+                } finally {
+                    server.stop();
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static byte[] randomBytes(final int length) {
+        final byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static Path newFile(final byte[] data) throws IOException {
+        final Path file = Files.createTempFile("httpserver-test-", ".bin");
+        Files.write(file, data);
+        return file;
+    }
+
+}
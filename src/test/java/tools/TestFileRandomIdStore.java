@@ -0,0 +1,82 @@
+package tools;
+
+import httpserver.session.FileRandomIdStore;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static httpserver.session.FileRandomIdStore.fileRandomIdStore;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.Assert.*;
+
+public class TestFileRandomIdStore {
+
+    @Test
+    public void testSessionsSurviveReopen() throws IOException {
+        final Path file = Files.createTempFile("sessions", ".log");
+        try (final var store = newStore(file)) {
+            store.storeSession("a", "session a");
+            store.storeSession("b", "session b");
+            store.storeSession("a", "session a2");
+            store.deleteSession("b");
+        }
+        try (final var store = newStore(file)) {
+            assertEquals("Invalid size after reopen", 1, store.size());
+            assertEquals("Newest session not kept", "session a2", store.retrieveSession("a"));
+            assertNull("Deleted session came back", store.retrieveSession("b"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        final Path file = Files.createTempFile("sessions", ".log");
+        final String data = "x".repeat(1000);
+        try (final var store = newStore(file)) {
+            for (int i = 0; i < 5000; i++) store.storeSession("id" + (i % 10), data + i);
+            assertTrue("Log not compacted", Files.size(file) < 5000L * 1000);
+        }
+        try (final var store = newStore(file)) {
+            assertEquals("Invalid size after compaction", 10, store.size());
+            assertEquals("Invalid session after compaction", data + 4999, store.retrieveSession("id9"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testTornRecordIgnored() throws IOException {
+        final Path file = Files.createTempFile("sessions", ".log");
+        try (final var store = newStore(file)) {
+            store.storeSession("a", "session a");
+            store.storeSession("b", "session b");
+        }
+        // Both records are 15 header bytes, a 1 byte id, 9 bytes of data and a 4 byte checksum.
+        // Changing the last byte of the checksum of b looks like a write that was torn.
+        try (final var channel = FileChannel.open(file, WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 0 }), 2 * (15 + 1 + 9 + 4) - 1);
+        }
+        try (final var store = newStore(file)) {
+            assertEquals("Valid session lost", "session a", store.retrieveSession("a"));
+            assertNull("Torn session replayed", store.retrieveSession("b"));
+            store.storeSession("c", "session c");
+        }
+        try (final var store = newStore(file)) {
+            assertEquals("Session after torn record lost", "session c", store.retrieveSession("c"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static FileRandomIdStore<String> newStore(final Path file) throws IOException {
+        return fileRandomIdStore(file, Duration.ofHours(1), session -> session.getBytes(UTF_8), bytes -> new String(bytes, UTF_8));
+    }
+
+}
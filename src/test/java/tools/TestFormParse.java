@@ -4,9 +4,14 @@ import httpserver.core.FormPart;
 import org.junit.Test;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 
+import static httpserver.core.FormParsing.DEFAULT_MEMORY_THRESHOLD;
 import static httpserver.core.FormParsing.parseMultipartForm;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.*;
 
@@ -45,6 +50,120 @@ public class TestFormParse {
         }
     }
 
+    @Test
+    public void testLargePartIsSpilledWhileReadingInSmallPieces() throws IOException {
+        // Data full of almost-boundaries, read a few bytes at a time so boundaries straddle reads
+        final var large = new StringBuilder();
+        while (large.length() < 200_000) large.append("\r\n--2a8ae6ad-f4ad-4d9a-a92c-6d217011fe0").append(large.length());
+        final byte[] body = ("--2a8ae6ad-f4ad-4d9a-a92c-6d217011fe0f\r\n"
+            + "Content-Disposition: form-data; name=\"small\"\r\n\r\nvalue\r\n"
+            + "--2a8ae6ad-f4ad-4d9a-a92c-6d217011fe0f\r\n"
+            + "content-disposition: form-data; name=\"large\"; filename=\"large.txt\"\r\n\r\n" + large + "\r\n"
+            + "--2a8ae6ad-f4ad-4d9a-a92c-6d217011fe0f--\r\n").getBytes(ISO_8859_1);
+
+        final List<FormPart> parts = parseMultipartForm(CONTENT_TYPE, new TrickleInputStream(body), 1024);
+        try {
+            assertEquals("Invalid form parts length", 2, parts.size());
+            assertEquals("Invalid name", "small", parts.get(0).getName());
+            assertEquals("Invalid small data", "value", new String(parts.get(0).getData(), ISO_8859_1));
+            assertNull("Small part should be in memory", parts.get(0).getFile());
+            assertEquals("Invalid filename", "large.txt", parts.get(1).getFilename());
+            assertNotNull("Large part should be in a file", parts.get(1).getFile());
+            assertEquals("Invalid large size", large.length(), parts.get(1).getSize());
+            assertEquals("Invalid large data", large.toString(), new String(parts.get(1).getData(), ISO_8859_1));
+        } finally {
+            for (final var part : parts) part.close();
+        }
+        assertFalse("Temp file not deleted", Files.exists(parts.get(1).getFile()));
+    }
+
+    @Test
+    public void testLegacyParsingLeavesNoTempFiles() throws IOException {
+        final String large = "x".repeat(DEFAULT_MEMORY_THRESHOLD * 2);
+        final byte[] body = ("--b\r\nContent-Disposition: form-data; name=\"large\"; filename=\"large.txt\"\r\n\r\n"
+            + large + "\r\n--b--").getBytes(ISO_8859_1);
+
+        final long before = countTempParts();
+        final List<FormPart> parts = parseMultipartForm("multipart/form-data; boundary=b", body.length, new ByteArrayInputStream(body));
+        assertNull("Large part written to a file", parts.get(0).getFile());
+        assertEquals("Invalid large data", large, new String(parts.get(0).getData(), ISO_8859_1));
+        assertEquals("Temp file left behind", before, countTempParts());
+    }
+
+    @Test
+    public void testStreamedPartsCanBeSkipped() throws IOException {
+        final List<String> seen = new ArrayList<>();
+        try (final var is = new ByteArrayInputStream(FORM_DATA)) {
+            parseMultipartForm(CONTENT_TYPE, is, part -> {
+                seen.add(part.getFilename());
+                if (seen.size() == 2) seen.add(new String(part.getInputStream().readAllBytes(), UTF_8));
+            });
+        }
+        assertEquals("Invalid parts", List.of("r.gif", "g.gif", "GIF87a.............,...........D..;", "b.gif"), seen);
+    }
+
+    @Test
+    public void testNegativeSkipDoesNotRereadData() throws IOException {
+        final List<String> seen = new ArrayList<>();
+        try (final var is = new ByteArrayInputStream(FORM_DATA)) {
+            parseMultipartForm(CONTENT_TYPE, is, part -> {
+                final var in = part.getInputStream();
+                assertEquals("Invalid skip", 6, in.skip(6));
+                assertEquals("Negative skip moved the stream", 0, in.skip(-6));
+                assertEquals("Zero skip moved the stream", 0, in.skip(0));
+                seen.add(new String(in.readAllBytes(), UTF_8));
+            });
+        }
+        assertEquals("Invalid parts", List.of(".............,...........D..;", ".............,...........D..;"
+            , ".............,...........D..;"), seen);
+    }
+
+    @Test
+    public void testContentDispositionParameters() throws IOException {
+        final byte[] body = ("--b\r\nContent-Disposition: form-data; name=\"a;b\"; filename=\"x\\\"y.txt\"\r\n\r\n\r\n"
+            + "--b\r\nContent-Disposition: form-data; name=field; filename=\"plain.txt\"; filename*=UTF-8''%E2%82%AC.txt\r\n\r\n\r\n"
+            + "--b--").getBytes(ISO_8859_1);
+        final List<FormPart> parts = parseMultipartForm("multipart/form-data; boundary=\"b\"", new ByteArrayInputStream(body), 1024);
+        assertEquals("Invalid quoted name", "a;b", parts.get(0).getName());
+        assertEquals("Invalid escaped filename", "x\"y.txt", parts.get(0).getFilename());
+        assertEquals("Invalid token name", "field", parts.get(1).getName());
+        assertEquals("Invalid extended filename", "\u20ac.txt", parts.get(1).getFilename());
+        assertEquals("Invalid empty data", 0, parts.get(1).getData().length);
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingClosingBoundary() throws IOException {
+        final byte[] body = "--b\r\nContent-Disposition: form-data; name=\"a\"\r\n\r\nno end".getBytes(ISO_8859_1);
+        parseMultipartForm("multipart/form-data; boundary=b", new ByteArrayInputStream(body), 1024);
+    }
+
+    private static long countTempParts() throws IOException {
+        try (final var files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.map(Path::getFileName).map(Path::toString)
+                .filter(name -> name.startsWith("httpserver-") && name.endsWith(".part")).count();
+        }
+    }
+
+    private static final class TrickleInputStream extends InputStream {
+        private final byte[] data;
+        private int position;
+
+        private TrickleInputStream(final byte[] data) {
+            this.data = data;
+        }
+
+        public int read() {
+            return position < data.length ? data[position++] & 0xFF : -1;
+        }
+        public int read(final byte[] buffer, final int offset, final int length) {
+            if (position == data.length) return -1;
+            final int count = Math.min(Math.min(length, data.length - position), 1 + position % 7);
+            System.arraycopy(data, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+    }
+
     private static void verifyFormPart(final List<FormPart> parts, final int id, final String letter) {
         verifyFormPart(parts.get(id - 1), "form-data; name=\"datafile" + id + "\"; filename=\"" + letter + ".gif\""
                 , "image/gif", 2, 35);
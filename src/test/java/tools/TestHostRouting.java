@@ -0,0 +1,80 @@
+package tools;
+
+import httpserver.HttpHandler;
+import org.junit.Test;
+
+import static httpserver.core.StatusCode.NOT_FOUND;
+import static httpserver.handlers.HostRouting.hostRouting;
+import static org.junit.Assert.*;
+import static tools.Exchanges.newExchange;
+
+public class TestHostRouting {
+
+    private static final String ROUTE = "X-Route";
+
+    @Test
+    public void testPortsAndWildcards() throws Exception {
+        final var router = hostRouting()
+            .host("example.com", route("plain"))
+            .host("example.com:8080", route("port"))
+            .host("*.example.com", route("wildcard"))
+            .host("*.api.example.com", route("longer wildcard"))
+            .host("*.example.com:8443", route("wildcard port"))
+            .build();
+
+        assertEquals("Exact host", "plain", routeOf(router, "example.com"));
+        assertEquals("Host with port rule", "port", routeOf(router, "example.com:8080"));
+        assertEquals("Host with other port", "plain", routeOf(router, "example.com:9090"));
+        assertEquals("Trailing dot", "plain", routeOf(router, "example.com."));
+        assertEquals("Wildcard", "wildcard", routeOf(router, "www.example.com"));
+        assertEquals("Longest wildcard", "longer wildcard", routeOf(router, "v1.api.example.com"));
+        assertEquals("Wildcard with port", "wildcard port", routeOf(router, "www.example.com:8443"));
+    }
+
+    @Test
+    public void testCaseInsensitive() throws Exception {
+        final var router = hostRouting().host("Example.COM", route("exact")).host("*.Example.com", route("wildcard")).build();
+        assertEquals("Mixed case request", "exact", routeOf(router, "eXample.Com"));
+        assertEquals("Mixed case wildcard", "wildcard", routeOf(router, "WWW.EXAMPLE.COM"));
+    }
+
+    @Test
+    public void testFallback() throws Exception {
+        final var router = hostRouting().host("example.com", route("exact")).build();
+        final var exchange = newExchange("GET", "/", "Host: other.com\r\n");
+        router.handleRequest(exchange);
+        assertEquals("Miss not sent to fallback", NOT_FOUND, exchange.getStatusCode());
+
+        final var custom = hostRouting().host("example.com", route("exact")).fallback(route("fallback")).build();
+        assertEquals("Custom fallback", "fallback", routeOf(custom, "example.org"));
+        assertEquals("Suffix without a label", "fallback", routeOf(hostRouting().host("*.example.com", route("wildcard"))
+            .fallback(route("fallback")).build(), "example.com"));
+    }
+
+    @Test
+    public void testHostsSharingCacheEntries() throws Exception {
+        // More hosts than cache entries, so hosts overwrite each other's entries
+        final int hosts = 5000;
+        final var routing = hostRouting();
+        for (int i = 0; i < hosts; i++) routing.host("host" + i + ".example.com", route("host" + i));
+        final var router = routing.build();
+
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < hosts; i++) {
+                final int host = round == 0 ? i : hosts - 1 - i;
+                assertEquals("Invalid handler for host " + host, "host" + host, routeOf(router, "host" + host + ".example.com"));
+            }
+        }
+    }
+
+    private static HttpHandler route(final String name) {
+        return exchange -> exchange.setResponseHeader(ROUTE, name);
+    }
+
+    private static String routeOf(final HttpHandler router, final String host) throws Exception {
+        final var exchange = newExchange("GET", "/", "Host: " + host + "\r\n");
+        router.handleRequest(exchange);
+        return exchange.getResponseHeader(ROUTE);
+    }
+
+}
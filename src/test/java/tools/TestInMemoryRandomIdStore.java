@@ -0,0 +1,67 @@
+package tools;
+
+import httpserver.session.InMemoryRandomIdStore;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+public class TestInMemoryRandomIdStore {
+
+    @Test
+    public void testStoreAndDelete() {
+        final var store = new InMemoryRandomIdStore<String>(100, Duration.ofHours(1), Duration.ofHours(8), 4);
+        store.storeSession("a", "session a");
+        assertEquals("Session not found", "session a", store.retrieveSession("a"));
+        store.deleteSession("a");
+        assertNull("Deleted session found", store.retrieveSession("a"));
+        assertEquals("Invalid size", 0, store.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        final var store = new InMemoryRandomIdStore<String>(2, Duration.ofHours(1), Duration.ofHours(8), 1);
+        store.storeSession("a", "session a");
+        store.storeSession("b", "session b");
+        store.retrieveSession("a");
+        store.storeSession("c", "session c");
+        assertEquals("Invalid size", 2, store.size());
+        assertNull("Least recently used session kept", store.retrieveSession("b"));
+        assertEquals("Recently used session evicted", "session a", store.retrieveSession("a"));
+    }
+
+    @Test
+    public void testNeverHoldsMoreThanMaxSessions() throws InterruptedException {
+        for (final int maxSessions : new int[] { 1, 4, 100, 130 }) {
+            final var store = new InMemoryRandomIdStore<String>(maxSessions, Duration.ofHours(1), Duration.ofHours(8), 64);
+            for (int i = 0; i < 10_000; i++) store.storeSession("session-" + i, "session");
+            assertEquals("Invalid size for max " + maxSessions, maxSessions, store.size());
+        }
+
+        // A session that is still used but is past its absolute timeout gives up its slot to a new
+        // session, instead of the least recently used one that is still valid
+        final var store = new InMemoryRandomIdStore<String>(2, Duration.ofHours(1), Duration.ofMillis(400), 1);
+        store.storeSession("old", "session old");
+        Thread.sleep(200);
+        store.storeSession("a", "session a");
+        assertNotNull("Session lost before its absolute timeout", store.retrieveSession("old"));
+        Thread.sleep(300);
+        store.storeSession("b", "session b");
+        assertEquals("Invalid size after the absolute timeout", 2, store.size());
+        assertNotNull("Valid session evicted", store.retrieveSession("a"));
+        assertNull("Session kept past its absolute timeout", store.retrieveSession("old"));
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        final var store = new InMemoryRandomIdStore<String>(100, Duration.ofMillis(50), Duration.ofHours(8), 1);
+        store.storeSession("a", "session a");
+        store.storeSession("b", "session b");
+        Thread.sleep(100);
+        assertNull("Idle session found", store.retrieveSession("a"));
+        store.removeExpired();
+        assertEquals("Expired sessions kept", 0, store.size());
+    }
+
+}
@@ -0,0 +1,71 @@
+package tools;
+
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static httpserver.core.ResponseBuilder.respond;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.Assert.*;
+import static tools.Servers.*;
+
+public class TestKeepAlive {
+
+    @Test
+    public void testNoStateCarriesOverToTheNextRequest() throws IOException {
+        for (final boolean nonBlocking : new boolean[] { false, true }) {
+            final var completed = new AtomicInteger();
+            final var server = startServer(nonBlocking, exchange -> {
+                if (exchange.getRequestPath().equals("/first")) {
+                    exchange.setPathParameterNames(new String[] { "id" });
+                    exchange.pathParameterIndex(1)[0] = 1;
+                    exchange.pathParameterIndex(1)[1] = 6;
+                    final String seen = exchange.getRequestHeader("X-Secret") + " " + exchange.getQueryParameter("secret")
+                        + " " + exchange.getCookie("session") + " " + exchange.getPathParameter("id") + " "
+                        + new String(exchange.getInputStream().readAllBytes(), ISO_8859_1) + " " + exchange.getRequestTrailer("X-Trailer");
+                    exchange.addExchangeCompleteListener((exception, done) -> completed.incrementAndGet());
+                    exchange.setStatusMessage("Made");
+                    exchange.setResponseHeader("X-First", "yes");
+                    respond(exchange).status(201).stream(out -> out.write(seen.getBytes(ISO_8859_1)));
+                    return;
+                }
+
+                final List<String> leaked = new ArrayList<>();
+                if (exchange.getRequestHeader("X-Secret") != null) leaked.add("request header");
+                if (exchange.getQueryString() != null || exchange.getQueryParameter("secret") != null) leaked.add("query");
+                if (exchange.getCookie("session") != null) leaked.add("cookie");
+                if (exchange.getPathParameter("id") != null) leaked.add("path parameter");
+                if (exchange.getInputStream().readAllBytes().length != 0) leaked.add("request body");
+                if (exchange.getRequestTrailer("X-Trailer") != null) leaked.add("trailer");
+                if (exchange.getStatusCode() != 200 || exchange.getStatusMessage() != null) leaked.add("status");
+                if (exchange.getResponseHeader("X-First") != null) leaked.add("response header");
+                exchange.send(leaked.toString(), ISO_8859_1);
+            });
+            try (final var socket = connect(server)) {
+                final var in = new BufferedInputStream(socket.getInputStream());
+                send(socket, "POST /first?secret=1 HTTP/1.1\r\nHost: x\r\nX-Secret: a\r\nCookie: session=abc\r\n"
+                    + "Transfer-Encoding: chunked\r\n\r\n5\r\nhello\r\n0\r\nX-Trailer: t\r\n\r\n");
+                final var first = readResponse(in);
+                assertEquals("Invalid first status line in mode " + nonBlocking, "HTTP/1.1 201 Made", first.statusLine());
+                assertEquals("Invalid first body in mode " + nonBlocking, "a 1 abc first hello t", first.text());
+                assertEquals("First response not chunked in mode " + nonBlocking, "chunked", first.header("Transfer-Encoding"));
+
+                send(socket, "GET /second HTTP/1.1\r\nHost: x\r\n\r\n");
+                final var second = readResponse(in);
+                assertEquals("State carried over in mode " + nonBlocking, "[]", second.text());
+                assertEquals("Status line carried over in mode " + nonBlocking, 200, second.status());
+                assertNull("Response header carried over in mode " + nonBlocking, second.header("X-First"));
+                assertNull("Chunking carried over in mode " + nonBlocking, second.header("Transfer-Encoding"));
+                assertEquals("Invalid length in mode " + nonBlocking, "2", second.header("Content-Length"));
+                assertEquals("Complete listener carried over in mode " + nonBlocking, 1, completed.get());
+            } finally {
+                server.stop();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+package tools;
+
+import httpserver.HttpHandler;
+import httpserver.core.HttpServerExchange;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+
+import static httpserver.core.Headers.ALLOW;
+import static httpserver.core.StatusCode.*;
+import static httpserver.handlers.MethodPathRouting.methodPathRouting;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.Assert.*;
+import static tools.Exchanges.newExchange;
+import static tools.Servers.*;
+
+public class TestMethodPathRouting {
+
+    private static final HttpHandler ROUTES = methodPathRouting()
+        .delete("/items/{id}", exchange -> exchange.send("deleted", ISO_8859_1))
+        .get("/items/{id}", exchange -> exchange.send("item " + exchange.getPathParameter("id"), ISO_8859_1))
+        .put("/items/{id}", exchange -> exchange.send("updated", ISO_8859_1))
+        .post("/items", exchange -> exchange.setStatusCode(CREATED))
+        .options("/custom", exchange -> exchange.setStatusCode(OK))
+        .post("/custom", exchange -> exchange.setStatusCode(CREATED));
+
+    @Test
+    public void testMethodNotAllowed() throws Exception {
+        final var exchange = route("PATCH", "/items/1");
+        assertEquals("Invalid status", METHOD_NOT_ALLOWED, exchange.getStatusCode());
+        assertEquals("Invalid Allow", "GET, HEAD, PUT, DELETE, OPTIONS", exchange.getResponseHeader(ALLOW));
+
+        final var post = route("GET", "/items");
+        assertEquals("Invalid status without GET", METHOD_NOT_ALLOWED, post.getStatusCode());
+        assertEquals("HEAD allowed without GET", "POST, OPTIONS", post.getResponseHeader(ALLOW));
+
+        assertEquals("Invalid status for an unknown method", METHOD_NOT_ALLOWED, route("BREW", "/items/1").getStatusCode());
+    }
+
+    @Test
+    public void testOptions() throws Exception {
+        final var exchange = route("OPTIONS", "/items/1");
+        assertEquals("Invalid status", NO_CONTENT, exchange.getStatusCode());
+        assertEquals("Invalid Allow", "GET, HEAD, PUT, DELETE, OPTIONS", exchange.getResponseHeader(ALLOW));
+
+        final var custom = route("OPTIONS", "/custom");
+        assertEquals("Own OPTIONS handler not used", OK, custom.getStatusCode());
+        assertNull("Allow set over an own OPTIONS handler", custom.getResponseHeader(ALLOW));
+    }
+
+    @Test
+    public void testUnknownPaths() throws Exception {
+        assertEquals("Invalid status for an unknown path", NOT_FOUND, route("GET", "/unknown").getStatusCode());
+        assertEquals("Invalid status for too many segments", NOT_FOUND, route("DELETE", "/items/1/2").getStatusCode());
+        assertEquals("Invalid status for OPTIONS", NOT_FOUND, route("OPTIONS", "/unknown").getStatusCode());
+        assertNull("Allow for an unknown path", route("PATCH", "/unknown").getResponseHeader(ALLOW));
+    }
+
+    @Test
+    public void testHeadAnsweredByGet() throws IOException {
+        for (final boolean nonBlocking : new boolean[] { false, true }) {
+            final var server = startServer(nonBlocking, ROUTES);
+            try (final var socket = connect(server)) {
+                send(socket, "HEAD /items/42 HTTP/1.1\r\nHost: x\r\n\r\nGET /items/42 HTTP/1.1\r\nHost: x\r\n\r\n");
+                final var in = new BufferedInputStream(socket.getInputStream());
+                final var head = readResponse(in, true);
+                assertEquals("Invalid HEAD status in mode " + nonBlocking, OK, head.status());
+                assertEquals("Invalid HEAD length in mode " + nonBlocking, "7", head.header("Content-Length"));
+                // A body after the HEAD response would be read as the start of the next response
+                final var get = readResponse(in);
+                assertEquals("Invalid GET status line in mode " + nonBlocking, OK, get.status());
+                assertEquals("Invalid GET body in mode " + nonBlocking, "item 42", get.text());
+            } finally {
+                server.stop();
+            }
+        }
+    }
+
+    @Test
+    public void testNestedRoutersKeepTheirOwnParameters() throws Exception {
+        final var seen = new StringBuilder();
+        final HttpHandler inner = methodPathRouting()
+            .get("/users/{user}/posts/{id}", exchange -> seen.append("inner ").append(exchange.getPathParameter("id"))
+                .append(' ').append(exchange.getPathParameter("user")).append(' ').append(exchange.getPathParameter("tenant")));
+        final HttpHandler outer = methodPathRouting()
+            .get("/users/{tenant}/*", exchange -> {
+                inner.handleRequest(exchange);
+                seen.append(", outer ").append(exchange.getPathParameter("tenant")).append(' ').append(exchange.getPathParameter("id"));
+            });
+
+        outer.handleRequest(newExchange("GET", "/users/7/posts/42", ""));
+        assertEquals("Invalid parameters", "inner 42 7 7, outer 7 null", seen.toString());
+
+        seen.setLength(0);
+        final var exchange = newExchange("GET", "/users/7/posts/42", "");
+        methodPathRouting().get("/users/{id}/*", outer).handleRequest(exchange);
+        assertEquals("Outer parameter overwritten", "inner 42 7 7, outer 7 7", seen.toString());
+        assertNull("Parameters left after routing", exchange.getPathParameter("id"));
+    }
+
+    private static HttpServerExchange route(final String method, final String path) throws Exception {
+        final var exchange = newExchange(method, path, "");
+        ROUTES.handleRequest(exchange);
+        return exchange;
+    }
+
+}
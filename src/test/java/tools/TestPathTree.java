@@ -0,0 +1,56 @@
+package tools;
+
+import httpserver.util.PathTree;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestPathTree {
+
+    @Test
+    public void testStaticRoutes() {
+        final var tree = newTree("/", "/users", "/users/me", "/user", "/api/v1/status");
+        final int[] captures = new int[0];
+        assertEquals("Root not found", "/", tree.find("/", captures));
+        assertEquals("Split node not found", "/user", tree.find("/user", captures));
+        assertEquals("Longer route not found", "/users/me", tree.find("/users/me", captures));
+        assertEquals("Route not found", "/api/v1/status", tree.find("/api/v1/status", captures));
+        assertNull("Prefix of a route matched", tree.find("/api/v1", captures));
+        assertNull("Unknown route matched", tree.find("/users/you", captures));
+    }
+
+    @Test
+    public void testParameters() {
+        final var tree = newTree("/users/{id}", "/users/me", "/users/{id}/posts/{post}", "/files/*");
+        final int[] captures = new int[tree.maxParameters() * 2];
+        assertEquals("Static route should win", "/users/me", tree.find("/users/me", captures));
+
+        assertEquals("Parameter route not found", "/users/{id}", tree.find("/users/mel", captures));
+        assertEquals("Invalid parameter", "mel", "/users/mel".substring(captures[0], captures[1]));
+
+        final String path = "/users/42/posts/7";
+        assertEquals("Nested route not found", "/users/{id}/posts/{post}", tree.find(path, captures));
+        assertEquals("Invalid first parameter", "42", path.substring(captures[0], captures[1]));
+        assertEquals("Invalid second parameter", "7", path.substring(captures[2], captures[3]));
+
+        assertNull("Empty segment matched", tree.find("/users/", captures));
+        assertNull("Unknown tail matched", tree.find("/users/42/comments", captures));
+
+        assertEquals("Wildcard route not found", "/files/*", tree.find("/files/a/b.txt", captures));
+        assertEquals("Invalid wildcard", "a/b.txt", "/files/a/b.txt".substring(captures[0], captures[1]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWildcardNotLast() {
+        newTree("/files/*/name");
+    }
+
+    private static PathTree<String> newTree(final String... routes) {
+        final var tree = new PathTree<String>();
+        for (final var route : routes) {
+            tree.computeIfAbsent(route, names -> route);
+        }
+        return tree;
+    }
+
+}
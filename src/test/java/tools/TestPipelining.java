@@ -0,0 +1,138 @@
+package tools;
+
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static httpserver.core.ResponseBuilder.respond;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.*;
+import static tools.Servers.*;
+
+public class TestPipelining {
+
+    private static final boolean[] MODES = { false, true };
+
+    @Test
+    public void testResponsesInRequestOrder() throws IOException {
+        for (final boolean nonBlocking : MODES) {
+            final var server = startServer(nonBlocking, exchange -> {
+                // Later requests are answered faster, they still have to wait their turn
+                final int number = Integer.parseInt(exchange.getRequestPath().substring(1));
+                Thread.sleep(20 - 2L * number);
+                exchange.send("response " + number, ISO_8859_1);
+            });
+            try (final var socket = connect(server)) {
+                final var requests = new StringBuilder();
+                for (int i = 0; i < 10; i++) requests.append("GET /").append(i).append(" HTTP/1.1\r\nHost: x\r\n\r\n");
+                send(socket, requests.toString());
+                final var in = new BufferedInputStream(socket.getInputStream());
+                for (int i = 0; i < 10; i++) {
+                    assertEquals("Response out of order in mode " + nonBlocking, "response " + i, readResponse(in).text());
+                }
+            } finally {
+                server.stop();
+            }
+        }
+    }
+
+    @Test
+    public void testHeldFlushIsReleasedWhenInputDrains() throws IOException {
+        for (final boolean nonBlocking : MODES) {
+            final var server = startServer(nonBlocking, exchange -> exchange.send(exchange.getRequestPath(), ISO_8859_1));
+            try (final var socket = connect(server)) {
+                final var in = new BufferedInputStream(socket.getInputStream());
+                // Held for the second request, which is the last one buffered and has to be sent on its own
+                send(socket, "GET /1 HTTP/1.1\r\nHost: x\r\n\r\nGET /2 HTTP/1.1\r\nHost: x\r\n\r\n");
+                assertEquals("Invalid first response in mode " + nonBlocking, "/1", readResponse(in).text());
+                assertEquals("Last response held in mode " + nonBlocking, "/2", readResponse(in).text());
+
+                // Only part of the next head is buffered, so there is nothing to wait for
+                send(socket, "GET /3 HTTP/1.1\r\nHost: x\r\n\r\nGET /4 HTTP/1.1\r\nHo");
+                assertEquals("Response held for a partial head in mode " + nonBlocking, "/3", readResponse(in).text());
+                send(socket, "st: x\r\n\r\n");
+                assertEquals("Invalid response to the completed head in mode " + nonBlocking, "/4", readResponse(in).text());
+            } catch (final SocketTimeoutException e) {
+                fail("Response held in mode " + nonBlocking);
+            } finally {
+                server.stop();
+            }
+        }
+    }
+
+    @Test
+    public void testLargeResponseWhileHeld() throws IOException {
+        final byte[] large = new byte[1024 * 1024];
+        new Random(1).nextBytes(large);
+        for (final boolean nonBlocking : MODES) {
+            final var server = startServer(nonBlocking, exchange -> {
+                if (exchange.getRequestPath().equals("/large")) exchange.send(large);
+                else exchange.send(exchange.getRequestPath(), ISO_8859_1);
+            });
+            try (final var socket = connect(server)) {
+                send(socket, "GET /small HTTP/1.1\r\nHost: x\r\n\r\nGET /large HTTP/1.1\r\nHost: x\r\n\r\n"
+                    + "GET /large HTTP/1.1\r\nHost: x\r\n\r\nGET /last HTTP/1.1\r\nHost: x\r\n\r\n");
+                final var in = new BufferedInputStream(socket.getInputStream());
+                assertEquals("Invalid first response in mode " + nonBlocking, "/small", readResponse(in).text());
+                assertTrue("Invalid large response in mode " + nonBlocking, Arrays.equals(large, readResponse(in).body()));
+                assertTrue("Invalid second large response in mode " + nonBlocking, Arrays.equals(large, readResponse(in).body()));
+                assertEquals("Invalid last response in mode " + nonBlocking, "/last", readResponse(in).text());
+            } finally {
+                server.stop();
+            }
+        }
+    }
+
+    @Test
+    public void testStreamedResponseIsNotHeld() throws Exception {
+        for (final boolean nonBlocking : MODES) {
+            final var written = new CountDownLatch(1);
+            final var server = startServer(nonBlocking, exchange -> {
+                if (!exchange.getRequestPath().equals("/stream")) exchange.send(exchange.getRequestPath(), ISO_8859_1);
+                else respond(exchange).status(200).contentType("text/plain").stream(out -> {
+                    out.write("first".getBytes(ISO_8859_1));
+                    out.flush();
+                    // Waits until the client has seen the first part, which a held flush would keep back
+                    try {
+                        if (!written.await(TIMEOUT, MILLISECONDS)) throw new IOException("First part not received");
+                    } catch (final InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                    out.write("second".getBytes(ISO_8859_1));
+                });
+            });
+            try (final var socket = connect(server)) {
+                send(socket, "GET /stream HTTP/1.1\r\nHost: x\r\n\r\nGET /next HTTP/1.1\r\nHost: x\r\n\r\n");
+                final var in = new BufferedInputStream(socket.getInputStream());
+                readUntil(in, "first");
+                written.countDown();
+                readUntil(in, "second");
+                readUntil(in, "0\r\n\r\n");
+                assertEquals("Invalid response after the stream in mode " + nonBlocking, "/next", readResponse(in).text());
+            } catch (final SocketTimeoutException e) {
+                fail("Streamed response held in mode " + nonBlocking);
+            } finally {
+                server.stop();
+            }
+        }
+    }
+
+    private static void readUntil(final InputStream in, final String text) throws IOException {
+        final var read = new ByteArrayOutputStream();
+        while (!read.toString(ISO_8859_1).endsWith(text)) {
+            final int b = in.read();
+            if (b == -1) throw new IOException("Connection closed before " + text);
+            read.write(b);
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+package tools;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static tools.Exchanges.newExchange;
+
+public class TestQueryString {
+
+    @Test
+    public void testParameters() throws IOException {
+        final var exchange = newExchange("GET", "/search?q=hello+world&page=2&empty=&flag&&tag=a&tag=b%26c&caf%C3%A9=cr%C3%A8me", "");
+        assertEquals("Invalid path", "/search", exchange.getRequestPath());
+        assertEquals("Invalid decoded value", "hello world", exchange.getQueryParameter("q"));
+        assertEquals("Invalid plain value", "2", exchange.getQueryParameter("page"));
+        assertEquals("Invalid empty value", "", exchange.getQueryParameter("empty"));
+        assertEquals("Invalid value without equals", "", exchange.getQueryParameter("flag"));
+        assertEquals("Last value expected", "b&c", exchange.getQueryParameter("tag"));
+        assertEquals("Invalid repeated values", List.of("a", "b&c"), exchange.getQueryParameters("tag"));
+        assertEquals("Invalid encoded name", "crème", exchange.getQueryParameter("café"));
+        assertNull("Unknown parameter found", exchange.getQueryParameter("missing"));
+        assertEquals("Unknown parameter has values", List.of(), exchange.getQueryParameters("missing"));
+    }
+
+    @Test
+    public void testNoQuery() throws IOException {
+        final var exchange = newExchange("GET", "/search", "");
+        assertNull("Parameter found without a query", exchange.getQueryParameter("q"));
+        assertNull("Query string found", exchange.getQueryString());
+    }
+
+}
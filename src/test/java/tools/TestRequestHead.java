@@ -0,0 +1,64 @@
+package tools;
+
+import httpserver.net.RequestInputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.Assert.*;
+
+public class TestRequestHead {
+
+    private static final String
+        HEAD = "GET /index.html HTTP/1.1\r\nHost: localhost\r\nAccept: */*\r\n\r\n",
+        NEXT = "GET /next HTTP/1.1\r\n\r\n";
+
+    @Test
+    public void testHeadInOneRead() throws IOException {
+        final var in = newRequestInputStream(HEAD + "body" + NEXT, 8192, 8192);
+        final byte[] data = new byte[8192];
+        assertEquals("Invalid head length", HEAD.length(), in.readRequestHead(data));
+        assertEquals("Invalid head", HEAD, new String(data, 0, HEAD.length(), US_ASCII));
+        assertEquals("Leftover bytes lost", "body", new String(in.readNBytes(4), US_ASCII));
+        assertTrue("Pipelined request not found", in.hasRequestHead());
+        assertEquals("Invalid next head length", NEXT.length(), in.readRequestHead(data));
+        assertFalse("No more requests expected", in.hasRequestHead());
+    }
+
+    @Test
+    public void testHeadSplitOverReads() throws IOException {
+        for (int chunk = 1; chunk < 20; chunk++) {
+            final var in = newRequestInputStream(HEAD + NEXT, 128, chunk);
+            final byte[] data = new byte[128];
+            assertEquals("Invalid head length for chunk " + chunk, HEAD.length(), in.readRequestHead(data));
+            assertEquals("Invalid next head length for chunk " + chunk, NEXT.length(), in.readRequestHead(data));
+        }
+    }
+
+    @Test
+    public void testNoFalseMatch() throws IOException {
+        final var in = newRequestInputStream("GET / HTTP/1.1\r\n\n\r\r\n\n\r\nX: \n\r\n\r\n", 128, 128);
+        assertEquals("Invalid head length", 31, in.readRequestHead(new byte[128]));
+    }
+
+    @Test(expected = IOException.class)
+    public void testHeadTooLarge() throws IOException {
+        newRequestInputStream(HEAD, 32, 8).readRequestHead(new byte[32]);
+    }
+
+    private static RequestInputStream newRequestInputStream(final String data, final int bufferSize, final int chunk) {
+        final InputStream source = new ByteArrayInputStream(data.getBytes(US_ASCII));
+        return new RequestInputStream(bufferSize) {
+            protected int fill() throws IOException {
+                final int free = freeSpace();
+                final int read = source.read(buffer, limit, Math.min(free, chunk));
+                if (read > 0) limit += read;
+                return read;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,32 @@
+package tools;
+
+import httpserver.handlers.ResourceCache;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class TestResourceCache {
+
+    @Test
+    public void testVariantsOfAPathShareOneEntry() throws IOException {
+        final var cache = new ResourceCache("/www");
+        final var resource = cache.get("/app.js");
+        assertNotNull("Resource not found", resource);
+        assertSame("Query string made a new entry", resource, cache.get("/app.js?v=2"));
+        assertSame("Dot segments made a new entry", resource, cache.get("/a/../app.js"));
+        assertNull("Path outside wwwroot was served", cache.get("/../www2/app.js"));
+    }
+
+    @Test
+    public void testMissingPathsDontEvictResources() throws IOException {
+        final var cache = new ResourceCache("/www", 1024, 16);
+        final var resource = cache.get("/app.js");
+        for (int i = 0; i < 10_000; i++) {
+            assertNull("Missing path was found", cache.get("/missing" + i));
+        }
+        assertSame("Resource was evicted", resource, cache.get("/app.js"));
+    }
+
+}
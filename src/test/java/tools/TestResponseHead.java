@@ -0,0 +1,83 @@
+package tools;
+
+import httpserver.core.HttpServerExchange;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.ZonedDateTime;
+
+import static httpserver.core.Headers.CONTENT_DISPOSITION;
+import static httpserver.core.Headers.LOCATION;
+import static httpserver.core.StatusCode.getMessageForCode;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
+import static org.junit.Assert.*;
+
+public class TestResponseHead {
+
+    @Test
+    public void testStatusLines() throws IOException {
+        for (final String protocol : new String[] { "HTTP/1.1", "HTTP/1.0" }) {
+            for (final int code : new int[] { 100, 200, 404, 599, 600, 999 }) {
+                final String line = protocol + " " + code + " " + getMessageForCode(code, null) + "\r\n";
+                assertEquals("Invalid status line", line, statusLine(sendHead(protocol, code, null)));
+            }
+        }
+        assertEquals("Invalid custom message", "HTTP/1.1 200 Fine\r\n", statusLine(sendHead("HTTP/1.1", 200, "Fine")));
+        assertEquals("Invalid custom message", "HTTP/1.0 404 Gone fishing\r\n", statusLine(sendHead("HTTP/1.0", 404, "Gone fishing")));
+    }
+
+    @Test
+    public void testDateChangesEverySecond() throws Exception {
+        final String first = dateOf(sendHead("HTTP/1.1", 200, null));
+        final long now = System.currentTimeMillis() / 1000;
+        final long sent = ZonedDateTime.parse(first, RFC_1123_DATE_TIME).toEpochSecond();
+        assertTrue("Date " + first + " is not now", Math.abs(sent - now) <= 1);
+
+        Thread.sleep(1100);
+        final String second = dateOf(sendHead("HTTP/1.1", 200, null));
+        assertNotEquals("Date not updated after a second", first, second);
+        assertEquals("Date not shared within the second", second, dateOf(sendHead("HTTP/1.1", 200, null)));
+    }
+
+    @Test
+    public void testNonAsciiValues() throws IOException {
+        final var exchange = newExchange("HTTP/1.1");
+        exchange.setResponseHeader(CONTENT_DISPOSITION, "attachment; filename=\"café €.txt\"");
+        exchange.setResponseHeader(LOCATION, "/日本");
+        exchange.setResponseHeader("X-Latin", "naïve");
+        exchange.sendResponse();
+
+        final String head = new String(((ByteArrayOutputStream) exchange.getOutputStream()).toByteArray(), UTF_8);
+        assertTrue("Invalid disposition", head.contains("\r\nContent-Disposition: attachment; filename=\"café €.txt\"\r\n"));
+        assertTrue("Invalid location", head.contains("\r\nLocation: /日本\r\n"));
+        assertTrue("Invalid Latin-1 value", head.contains("\r\nX-Latin: naïve\r\n"));
+        assertTrue("Invalid ASCII value", head.contains("\r\nContent-Length: 0\r\n"));
+    }
+
+    private static String sendHead(final String protocol, final int statusCode, final String statusMessage) throws IOException {
+        final var exchange = newExchange(protocol);
+        exchange.setStatusCode(statusCode);
+        if (statusMessage != null) exchange.setStatusMessage(statusMessage);
+        exchange.sendResponse();
+        return new String(((ByteArrayOutputStream) exchange.getOutputStream()).toByteArray(), ISO_8859_1);
+    }
+
+    private static HttpServerExchange newExchange(final String protocol) throws IOException {
+        final byte[] head = ("GET / " + protocol + "\r\nHost: localhost\r\n\r\n").getBytes(ISO_8859_1);
+        return new HttpServerExchange(null, head, head.length, InputStream.nullInputStream(), new ByteArrayOutputStream());
+    }
+
+    private static String statusLine(final String head) {
+        return head.substring(0, head.indexOf("\r\n") + 2);
+    }
+
+    private static String dateOf(final String head) {
+        final int start = head.indexOf("\r\nDate: ") + "\r\nDate: ".length();
+        return head.substring(start, head.indexOf("\r\n", start));
+    }
+
+}
@@ -0,0 +1,177 @@
+package tools;
+
+import httpserver.core.HttpServerExchange;
+import httpserver.handlers.ServerSentEvents;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static httpserver.core.StatusCode.NO_CONTENT;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+import static tools.Exchanges.newExchange;
+
+public class TestServerSentEvents {
+
+    private static final long TIMEOUT = 5000;
+
+    @Test
+    public void testFanOutToTwoClients() throws Exception {
+        final var events = new ServerSentEvents();
+        final var first = connect(events, "");
+        final var second = connect(events, "");
+        awaitClients(events, 2);
+
+        events.sendMessage("hello");
+        first.await("id: 0\ndata: hello\n\n");
+        second.await("id: 0\ndata: hello\n\n");
+        events.close();
+        first.awaitEnd();
+        second.awaitEnd();
+    }
+
+    @Test
+    public void testEventEncoding() throws Exception {
+        final var events = new ServerSentEvents();
+        final var client = connect(events, "");
+        awaitClients(events, 1);
+
+        events.sendMessage("7", "update", "line one\r\nline two\nline three");
+        client.await("id: 7\nevent: update\ndata: line one\ndata: line two\ndata: line three\n\n");
+        events.close();
+        client.awaitEnd();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLineBreakInType() {
+        new ServerSentEvents().sendMessage("1", "up\ndate", "data");
+    }
+
+    @Test
+    public void testSlowClientIsDropped() throws Exception {
+        final var events = new ServerSentEvents(1000, 2, 16);
+        final var exchange = newExchange("GET", "/events", "");
+        events.handleRequest(exchange);
+        assertEquals("Client not registered", 1, events.clientCount());
+
+        // Nothing drains the queue, the third event doesn't fit
+        events.sendMessage("1");
+        events.sendMessage("2");
+        events.sendMessage("3");
+        assertEquals("Slow client not dropped", 0, events.clientCount());
+
+        final var out = new ByteArrayOutputStream();
+        exchange.getResponseBody().writeTo(out);
+        assertEquals("Dropped client got events", "", out.toString(UTF_8));
+    }
+
+    @Test
+    public void testReplayAfterLastEventId() throws Exception {
+        final var events = new ServerSentEvents();
+        events.sendMessage("a");
+        events.sendMessage("b");
+        events.sendMessage("c");
+
+        final var client = connect(events, "Last-Event-ID: 0\r\n");
+        client.await("id: 1\ndata: b\n\nid: 2\ndata: c\n\n");
+        awaitClients(events, 1);
+        events.sendMessage("d");
+        client.await("id: 3\ndata: d\n\n");
+        events.close();
+        client.awaitEnd();
+        assertFalse("Event before Last-Event-ID replayed", client.text().contains("data: a"));
+    }
+
+    @Test
+    public void testReplayThatDoesNotFitEndsTheStream() throws Exception {
+        final var events = new ServerSentEvents(1000, 2, 16);
+        for (int i = 0; i < 5; i++) events.sendMessage("event " + i);
+
+        final var client = connect(events, "Last-Event-ID: 0\r\n");
+        client.awaitEnd();
+        assertEquals("Invalid partial replay", "id: 1\ndata: event 1\n\nid: 2\ndata: event 2\n\n", client.text());
+        assertEquals("Catching up client registered", 0, events.clientCount());
+    }
+
+    @Test
+    public void testKeepAliveOnIdleStream() throws Exception {
+        final var events = new ServerSentEvents(1000);
+        final var client = connect(events, "");
+        client.await(": keep-alive\n\n");
+        events.close();
+        client.awaitEnd();
+    }
+
+    @Test
+    public void testClosedSourceTurnsAwayClients() throws Exception {
+        final var events = new ServerSentEvents();
+        events.close();
+        final var exchange = newExchange("GET", "/events", "");
+        events.handleRequest(exchange);
+        assertEquals("Invalid status", NO_CONTENT, exchange.getStatusCode());
+        assertEquals("Client registered after close", 0, events.clientCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeReplaySize() {
+        new ServerSentEvents(1000, 1, -1);
+    }
+
+    private static Client connect(final ServerSentEvents events, final String headers) throws IOException {
+        final HttpServerExchange exchange = newExchange("GET", "/events", headers);
+        events.handleRequest(exchange);
+        final var client = new Client();
+        client.thread = Thread.ofVirtual().start(() -> {
+            try {
+                exchange.getResponseBody().writeTo(client);
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        return client;
+    }
+
+    private static void awaitClients(final ServerSentEvents events, final int count) throws InterruptedException {
+        final long end = System.currentTimeMillis() + TIMEOUT;
+        while (events.clientCount() != count) {
+            if (System.currentTimeMillis() > end) fail("Expected " + count + " clients, found " + events.clientCount());
+            Thread.sleep(10);
+        }
+    }
+
+    // Collects what is written to a client
+    private static final class Client extends OutputStream {
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        private Thread thread;
+
+        public synchronized void write(final int b) {
+            written.write(b);
+            notifyAll();
+        }
+        public synchronized void write(final byte[] data, final int offset, final int length) {
+            written.write(data, offset, length);
+            notifyAll();
+        }
+
+        private synchronized String text() {
+            return written.toString(UTF_8);
+        }
+
+        private synchronized void await(final String expected) throws InterruptedException {
+            final long end = System.currentTimeMillis() + TIMEOUT;
+            while (!text().contains(expected)) {
+                final long left = end - System.currentTimeMillis();
+                if (left <= 0) fail("Expected '" + expected + "' but got '" + text() + "'");
+                wait(left);
+            }
+        }
+
+        private void awaitEnd() throws InterruptedException {
+            thread.join(TIMEOUT);
+            assertFalse("Stream did not end", thread.isAlive());
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+package tools;
+
+import httpserver.HttpHandler;
+import httpserver.core.HttpServerExchange;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static httpserver.core.Headers.*;
+import static httpserver.core.StatusCode.*;
+import static httpserver.handlers.StaticFiles.staticFiles;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.Assert.*;
+import static tools.Exchanges.newExchange;
+
+public class TestStaticFileRanges {
+
+    private static final String CONTENT = "abcdefghijklmnopqrstuvwxyz";
+
+    private static Path directory;
+    private static HttpHandler handler;
+
+    @BeforeClass
+    public static void createFile() throws IOException {
+        directory = Files.createTempDirectory("static");
+        Files.writeString(directory.resolve("letters.txt"), CONTENT, ISO_8859_1);
+        handler = staticFiles(directory).build();
+    }
+
+    @AfterClass
+    public static void deleteFile() throws IOException {
+        Files.deleteIfExists(directory.resolve("letters.txt"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    public void testSingleRange() throws Exception {
+        final var exchange = get("Range: bytes=2-4\r\n");
+        assertEquals("Invalid status", PARTIAL_CONTENT, exchange.getStatusCode());
+        assertEquals("Invalid Content-Range", "bytes 2-4/26", exchange.getResponseHeader(CONTENT_RANGE));
+        assertEquals("Invalid body", "cde", body(exchange));
+    }
+
+    @Test
+    public void testOpenAndClampedRanges() throws Exception {
+        assertEquals("Invalid open range", "xyz", body(get("Range: bytes=23-\r\n")));
+        final var exchange = get("Range: bytes=24-1000\r\n");
+        assertEquals("Invalid clamped Content-Range", "bytes 24-25/26", exchange.getResponseHeader(CONTENT_RANGE));
+        assertEquals("Invalid clamped range", "yz", body(exchange));
+    }
+
+    @Test
+    public void testSuffixRange() throws Exception {
+        final var exchange = get("Range: bytes=-3\r\n");
+        assertEquals("Invalid Content-Range", "bytes 23-25/26", exchange.getResponseHeader(CONTENT_RANGE));
+        assertEquals("Invalid body", "xyz", body(exchange));
+        assertEquals("Suffix larger than the file", CONTENT, body(get("Range: bytes=-100\r\n")));
+    }
+
+    @Test
+    public void testMultipleRanges() throws Exception {
+        final var exchange = get("Range: bytes=0-1, 24-\r\n");
+        assertEquals("Invalid status", PARTIAL_CONTENT, exchange.getStatusCode());
+        final String type = exchange.getResponseHeader(CONTENT_TYPE);
+        assertTrue("Invalid Content-Type " + type, type.startsWith("multipart/byteranges; boundary="));
+        final String boundary = type.substring(type.indexOf('=') + 1);
+
+        final String body = body(exchange);
+        assertEquals("Invalid Content-Length", body.length(), exchange.getResponseBody().getLength());
+        assertEquals("Invalid multipart body",
+            "\r\n--" + boundary + "\r\nContent-Type: text/plain\r\nContent-Range: bytes 0-1/26\r\n\r\nab"
+            + "\r\n--" + boundary + "\r\nContent-Type: text/plain\r\nContent-Range: bytes 24-25/26\r\n\r\nyz"
+            + "\r\n--" + boundary + "--\r\n", body.replaceAll("Content-Type: text/plain[^\r]*", "Content-Type: text/plain"));
+    }
+
+    @Test
+    public void testUnsatisfiableRanges() throws Exception {
+        for (final String range : new String[] { "bytes=26-30", "bytes=-0", "bytes=100-, 200-" }) {
+            final var exchange = get("Range: " + range + "\r\n");
+            assertEquals("Invalid status for " + range, REQUESTED_RANGE_NOT_SATISFIABLE, exchange.getStatusCode());
+            assertEquals("Invalid Content-Range for " + range, "bytes */26", exchange.getResponseHeader(CONTENT_RANGE));
+        }
+    }
+
+    @Test
+    public void testInvalidRangesAreIgnored() throws Exception {
+        for (final String range : new String[] { "bytes=5-2", "bytes=a-b", "bytes=5", "items=0-1", "bytes=" }) {
+            final var exchange = get("Range: " + range + "\r\n");
+            assertEquals("Invalid status for " + range, OK, exchange.getStatusCode());
+            assertEquals("Invalid body for " + range, CONTENT, body(exchange));
+        }
+    }
+
+    @Test
+    public void testTooManyRangesAreIgnored() throws Exception {
+        final var ranges = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= 16; i++) ranges.append(",").append(i).append("-").append(i);
+        assertEquals("Invalid status", OK, get("Range: " + ranges + "\r\n").getStatusCode());
+    }
+
+    @Test
+    public void testIfRange() throws Exception {
+        final String etag = get("").getResponseHeader(ETAG);
+        final var current = get("Range: bytes=0-2\r\nIf-Range: " + etag + "\r\n");
+        assertEquals("Current validator ignored", PARTIAL_CONTENT, current.getStatusCode());
+        assertEquals("Invalid body for current validator", "abc", body(current));
+
+        final var stale = get("Range: bytes=0-2\r\nIf-Range: \"stale\"\r\n");
+        assertEquals("Stale validator not ignored", OK, stale.getStatusCode());
+        assertEquals("Invalid body for stale validator", CONTENT, body(stale));
+
+        final var staleDate = get("Range: bytes=0-2\r\nIf-Range: Tue, 01 Jan 2000 00:00:00 GMT\r\n");
+        assertEquals("Stale date not ignored", OK, staleDate.getStatusCode());
+    }
+
+    private static HttpServerExchange get(final String headers) throws Exception {
+        final var exchange = newExchange("GET", "/letters.txt", headers);
+        handler.handleRequest(exchange);
+        return exchange;
+    }
+
+    private static String body(final HttpServerExchange exchange) throws IOException {
+        final var out = new ByteArrayOutputStream();
+        exchange.getResponseBody().writeTo(out);
+        return out.toString(ISO_8859_1);
+    }
+
+}
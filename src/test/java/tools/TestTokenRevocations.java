@@ -0,0 +1,32 @@
+package tools;
+
+import httpserver.session.TokenRevocations;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+public class TestTokenRevocations {
+
+    @Test
+    public void testRevoked() {
+        final var revocations = new TokenRevocations(1000, 0.01, Duration.ofHours(1));
+        assertFalse("Token revoked before anything was revoked", revocations.isRevoked("token-0"));
+        for (int i = 0; i < 1000; i += 2) revocations.revoke("token-" + i);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("Invalid revocation for token " + i, i % 2 == 0, revocations.isRevoked("token-" + i));
+        }
+    }
+
+    @Test
+    public void testRotation() throws InterruptedException {
+        final var revocations = new TokenRevocations(100, 0.01, Duration.ofMillis(50));
+        revocations.revoke("token");
+        Thread.sleep(60);
+        assertTrue("Revocation lost after one lifetime", revocations.isRevoked("token"));
+        Thread.sleep(60);
+        assertFalse("Revocation kept after two lifetimes", revocations.isRevoked("token"));
+    }
+
+}
@@ -0,0 +1,127 @@
+package tools;
+
+import httpserver.error.Forbidden;
+import httpserver.session.TokenRevocations;
+import httpserver.session.TokenSessionStore;
+import httpserver.util.HmacSha256;
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+
+import static httpserver.core.Headers.SET_COOKIE;
+import static httpserver.util.Encoding.encodeBase64Url;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+import static tools.Exchanges.newExchange;
+
+public class TestTokenSessionStore {
+
+    private static final TokenSessionStore<String> STORE = new TokenSessionStore<>() {
+        private final byte[] key = "secret key".getBytes(UTF_8);
+        private final HmacSha256 mac = new HmacSha256(key);
+
+        public byte[] getSessionValidationKey() {
+            return key;
+        }
+        public HmacSha256 getSessionMac() {
+            return mac;
+        }
+        public byte[] sessionToJson(final String session, final Charset charset) {
+            return session.getBytes(charset);
+        }
+        public String sessionFromJson(final String json) {
+            return json;
+        }
+    };
+
+    @Test
+    public void testHmacMatchesJdk() throws GeneralSecurityException {
+        final byte[] data = "some data to sign".getBytes(UTF_8);
+        for (final int keyLength : new int[] { 1, 16, 64, 65, 200 }) {
+            final byte[] key = new byte[keyLength];
+            for (int i = 0; i < keyLength; i++) key[i] = (byte) i;
+            final var mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            assertArrayEquals("Invalid HMAC for key length " + keyLength, mac.doFinal(data), new HmacSha256(key).sign(data));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Forbidden {
+        assertEquals("Valid token rejected", "{\"user\":1}", STORE.fromSessionValue(newToken("{\"user\":1}", "{\"user\":1}")));
+    }
+
+    @Test(expected = Forbidden.class)
+    public void testTamperedToken() throws Forbidden {
+        STORE.fromSessionValue(newToken("{\"user\":2}", "{\"user\":1}"));
+    }
+
+    @Test(expected = Forbidden.class)
+    public void testMalformedToken() throws Forbidden {
+        STORE.fromSessionValue("not.a.token");
+    }
+
+    @Test
+    public void testDefaultMacIsReused() throws Forbidden {
+        final byte[][] key = { "secret key".getBytes(UTF_8) };
+        final TokenSessionStore<String> store = new TokenSessionStore<>() {
+            public byte[] getSessionValidationKey() {
+                return key[0].clone();
+            }
+            public byte[] sessionToJson(final String session, final Charset charset) {
+                return session.getBytes(charset);
+            }
+            public String sessionFromJson(final String json) {
+                return json;
+            }
+        };
+        final var mac = store.getSessionMac();
+        assertSame("New HMAC for the same key", mac, store.getSessionMac());
+        assertEquals("Valid token rejected", "{\"user\":1}", store.fromSessionValue(newToken("{\"user\":1}", "{\"user\":1}")));
+        assertSame("New HMAC after verifying", mac, store.getSessionMac());
+
+        key[0] = "other key".getBytes(UTF_8);
+        assertNotSame("Same HMAC for a new key", mac, store.getSessionMac());
+        assertThrows("Token for the old key accepted", Forbidden.class,
+            () -> store.fromSessionValue(newToken("{\"user\":1}", "{\"user\":1}")));
+    }
+
+    @Test
+    public void testTokensExpireWithRevocations() throws Exception {
+        final var revocations = new TokenRevocations(10, 0.01, Duration.ofMillis(200));
+        final TokenSessionStore<String> store = new TokenSessionStore<>() {
+            public byte[] getSessionValidationKey() {
+                return "secret key".getBytes(UTF_8);
+            }
+            public byte[] sessionToJson(final String session, final Charset charset) {
+                return session.getBytes(charset);
+            }
+            public String sessionFromJson(final String json) {
+                return json;
+            }
+            public TokenRevocations getRevocations() {
+                return revocations;
+            }
+        };
+        final var exchange = newExchange("GET", "/", "");
+        store.setSession(exchange, "{\"user\":1}");
+        final String cookie = exchange.getResponseHeader(SET_COOKIE);
+        final String token = cookie.substring(cookie.indexOf('=') + 1, cookie.indexOf(';') == -1 ? cookie.length() : cookie.indexOf(';'));
+
+        assertEquals("Valid token rejected", "{\"user\":1}", store.fromSessionValue(token));
+        assertThrows("Token without issue time accepted", Forbidden.class,
+            () -> store.fromSessionValue(newToken("{\"user\":1}", "{\"user\":1}")));
+        Thread.sleep(250);
+        assertThrows("Token older than the lifetime accepted", Forbidden.class, () -> store.fromSessionValue(token));
+    }
+
+    private static String newToken(final String session, final String signedSession) {
+        final byte[] signature = STORE.getSessionMac().sign(encodeBase64Url(signedSession.getBytes(UTF_8)).getBytes(UTF_8));
+        return encodeBase64Url(session.getBytes(UTF_8)) + "." + encodeBase64Url(signature);
+    }
+
+}